@@ -39,8 +39,10 @@ import com.cgs.jt.rwis.api.params.ForecastedParameter;
 import com.cgs.jt.rwis.srvcs.conf.ForecastServiceConf;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
 
 import io.dropwizard.jersey.errors.ErrorMessage;
 
@@ -119,6 +121,13 @@ public class ForecastSrvClient {
 				;
 		clientConfig.register(new JacksonJaxbJsonProvider(objectMapper,null));
 
+		//register the same ObjectMapper configuration for Smile (binary JSON) - used if a request accepts
+		//application/x-jackson-smile (services that do not support it answer with JSON)
+		ObjectMapper smileObjectMapper = new ObjectMapper(new SmileFactory())
+				.registerModule(new JavaTimeModule())
+				.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+		clientConfig.register(new JacksonSmileProvider(smileObjectMapper));
+
 		//ClientBuilder uses org.glassfish.jersey.client.JerseyClientBuilder
 		this.client = ClientBuilder.newClient(clientConfig);
 
@@ -10,6 +10,7 @@ package com.cgs.jt.rwis.clients.http;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.client.Client;
@@ -40,8 +41,11 @@ import com.cgs.jt.rwis.srvcs.conf.SubscriptionServiceConf;
 import com.cgs.jt.rwis.srvcs.json.EarthSurfacePointMapKeyDeserializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 
 import io.dropwizard.jersey.errors.ErrorMessage;
 
@@ -127,6 +131,13 @@ public class MetaserviceSrvClient {
 				;
 		clientConfig.register(new JacksonJaxbJsonProvider(objectMapper,null));
 
+		//register the same ObjectMapper configuration for Smile (binary JSON) - used if a request accepts
+		//application/x-jackson-smile (services that do not support it answer with JSON)
+		ObjectMapper smileObjectMapper = new ObjectMapper(new SmileFactory())
+				.registerModule(new JavaTimeModule())
+				.registerModule(new SimpleModule().addKeyDeserializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeyDeserializer()));
+		clientConfig.register(new JacksonSmileProvider(smileObjectMapper));
+
 		//ClientBuilder uses org.glassfish.jersey.client.JerseyClientBuilder
 		this.client = ClientBuilder.newClient(clientConfig);
 
@@ -175,7 +186,8 @@ public class MetaserviceSrvClient {
 		try {
 			response = target
 					.path(MetaServiceConf.SUBSCR_PATH+"/"+forecastModelId)
-					.request(MediaType.APPLICATION_JSON)
+					//the subscription map is large - prefer the (smaller and faster to parse) Smile encoding
+					.request(SmileMediaTypes.APPLICATION_JACKSON_SMILE, MediaType.APPLICATION_JSON+";q=0.9")
 					.get();
 			if (response.getStatusInfo().equals(Response.Status.OK)){				
 				//NOTE: when reading Map entity in JAX-RS client you need to provide the GenericType instance (a hint 
@@ -237,9 +249,13 @@ public class MetaserviceSrvClient {
 
 	/**
 	 * Sends HTTP request containing the parameter subscription, obtains HTTP response,
-	 * checks the response, and if not 200 OK throws exception.
+	 * checks the response, and if not 201 Created or 200 OK throws exception.
+	 * NOTE: the service answers 200 OK when the subscription already exists (for example when this request is retried), 
+	 * so calling this method again with the same subscription is safe.
 	 * 
 	 * @param pfs The parameter forecast subscription.
+	 * @return The created parameter forecast subscription, or the stored one if it already existed (its elevation may 
+	 * differ from the given one).
 	 */
 	public ParameterForecastSubscription insertForecastSubscription(ParameterForecastSubscription pfs) throws HttpRequestExecutionException {
 
@@ -254,7 +270,8 @@ public class MetaserviceSrvClient {
 					.post(Entity.json(pfs));
 
 
-			if (response.getStatusInfo().equals(Response.Status.CREATED)){				
+			//201 = created by this request, 200 = already existed
+			if (response.getStatusInfo().equals(Response.Status.CREATED) || response.getStatusInfo().equals(Response.Status.OK)){				
 				//NOTE: when reading entity in JAX-RS client you need to provide the GenericType instance (a hint 
 				//to JAX-RS how to deserialize)
 				//TODO: when Dropwizard metaservice returns HTTP status 201 = created it also automatically sends back JSON representing the created object.
@@ -277,9 +294,9 @@ public class MetaserviceSrvClient {
 						throw new HttpRequestExecutionException("HTTP response status code is: "+response.getStatusInfo().getStatusCode()+" . Error description: "+em.getMessage());
 					}
 				}
-				//TODO: maybe handling of some other HTTP response codes (except 201, 4xx and 5xx is needed).
+				//TODO: maybe handling of some other HTTP response codes (except 200, 201, 4xx and 5xx is needed).
 				else {
-					//the response status is not 201 or from 4xx or 5xx family
+					//the response status is not 200, 201 or from 4xx or 5xx family
 					//so this is something really unusual... so unusual that we will throw exception...
 					throw new HttpRequestExecutionException("HTTP response status is: "+response.getStatusInfo().getStatusCode()+". This kind of response is not expected!");
 				}
@@ -309,6 +326,76 @@ public class MetaserviceSrvClient {
 
 
 
+	/**
+	 * Sends HTTP request containing multiple parameter subscriptions (which are all stored by the service in a single 
+	 * transaction), obtains HTTP response, checks the response, and if not 201 Created throws exception.
+	 * NOTE: this should be preferred over calling {@link #insertForecastSubscription(ParameterForecastSubscription)} in a loop 
+	 * (for example when a new customer with many locations is onboarded) - one HTTP request and one database transaction 
+	 * are used instead of one per subscription.
+	 * 
+	 * @param pfsList The list of parameter forecast subscriptions.
+	 * NOTE: subscriptions that already exist are skipped by the service, so calling this method again with the same list 
+	 * (for example when the request is retried) is safe.
+	 * 
+	 * @return The list of parameter forecast subscriptions created by this request, the ones that already existed are not 
+	 * included (duplicates in the given list are removed by the service).
+	 */
+	public List<ParameterForecastSubscription> insertForecastSubscriptions(List<ParameterForecastSubscription> pfsList) throws HttpRequestExecutionException {
+
+		//NOTE: Closing the response is not strictly necessary (if not using InputStream), but it does not hurt anyway - see:
+		//https://stackoverflow.com/questions/33083961/closing-jax-rs-client-response
+		Response response = null;
+		try {
+			response = target
+					.path(MetaServiceConf.SUBSCR_PATH+"/batch")
+					.request(MediaType.APPLICATION_JSON)				
+					.post(Entity.json(pfsList));
+
+
+			if (response.getStatusInfo().equals(Response.Status.CREATED)){				
+				//NOTE: when reading List entity in JAX-RS client you need to provide the GenericType instance (a hint 
+				//to JAX-RS how to deserialize)
+				List<ParameterForecastSubscription> result = response.readEntity(new GenericType<List<ParameterForecastSubscription>>() { });
+				return result;
+			}			
+			else {
+				if (response.getStatusInfo().getFamily().equals(Response.Status.Family.SERVER_ERROR) || 
+						response.getStatusInfo().getFamily().equals(Response.Status.Family.CLIENT_ERROR)){
+					//in this case we can be sure that the server returned an {@link io.dropwizard.jersey.errors.ErrorMessage} 
+					//containing the description of the error - so we can use that to populate the Exception that we throw
+					ErrorMessage em = response.readEntity(ErrorMessage.class); 					
+					if(em.getDetails()!=null) {
+						throw new HttpRequestExecutionException("HTTP response status code is: "+response.getStatusInfo().getStatusCode()+" . Error description: "+em.getMessage()+ ". Details are: "+em.getDetails());
+					}
+					else {
+						throw new HttpRequestExecutionException("HTTP response status code is: "+response.getStatusInfo().getStatusCode()+" . Error description: "+em.getMessage());
+					}
+				}
+				else {
+					//the response status is not 201 or from 4xx or 5xx family
+					//so this is something really unusual... so unusual that we will throw exception...
+					throw new HttpRequestExecutionException("HTTP response status is: "+response.getStatusInfo().getStatusCode()+". This kind of response is not expected!");
+				}
+			}			
+		}
+		catch(Exception e) {
+			//we will catch any kind of exception (checked and non-checked/runtime, HTTP transport exceptions and/or HTTP protocol 
+			//exceptions) and re-throw it as Exception. This will signal to the consumer that the HTTP request did not succeed.
+			throw new HttpRequestExecutionException("HTTP request failed!", e);
+		}
+		finally {
+			//Close response object to close underlying stream if it's not fully read.
+			if(response != null) {
+				response.close();
+			}
+		}
+	}
+
+
+
+
+
+
 	/**
 	 * Sends HTTP request containing the geographic location (for which we would like to retrieve Metro location description), and modelId (that will
 	 * be processing this description) obtains HTTP response, and returns the MetroLocationDescription object for this location/model combination. 
@@ -385,11 +472,99 @@ public class MetaserviceSrvClient {
 
 
 
+	/**
+	 * Sends HTTP request containing the modelId, obtains HTTP response, and returns all the MetroLocationDescription objects 
+	 * for this model (in a single request - this should be preferred over calling {@link #getMetroLocationDescription(GeographicLocation, String)} 
+	 * for each location).
+	 * @param modelId The forecast model for which to obtain Metro location descriptions.
+	 * @return The Metro location descriptions for the given model (empty list if there are none).
+	 */
+	public List<MetroLocationDescription> getMetroLocationDescriptions(String modelId) throws HttpRequestExecutionException{
+		return getMetroLocationDescriptions(target.path(MetaServiceConf.METROCONFIG_PATH+"/"+modelId));
+	}
+
+
+
+	/**
+	 * Sends HTTP request containing the modelId and the bounding box, obtains HTTP response, and returns all the 
+	 * MetroLocationDescription objects for this model with location inside the bounding box (in a single request).
+	 * @param modelId The forecast model for which to obtain Metro location descriptions.
+	 * @param minLatitude The southern edge of the bounding box.
+	 * @param minLongitude The western edge of the bounding box.
+	 * @param maxLatitude The northern edge of the bounding box.
+	 * @param maxLongitude The eastern edge of the bounding box.
+	 * @return The Metro location descriptions for the given model and bounding box (empty list if there are none).
+	 */
+	public List<MetroLocationDescription> getMetroLocationDescriptions(String modelId, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) throws HttpRequestExecutionException{
+		//NOTE: the service expects the GeoJSON bbox order: minLon,minLat,maxLon,maxLat
+		return getMetroLocationDescriptions(target
+				.path(MetaServiceConf.METROCONFIG_PATH+"/"+modelId)
+				.queryParam("bbox", minLongitude+","+minLatitude+","+maxLongitude+","+maxLatitude));
+	}
+
+
+
+	private List<MetroLocationDescription> getMetroLocationDescriptions(WebTarget modelTarget) throws HttpRequestExecutionException{
+
+		//NOTE: Closing the response is not strictly necessary (if not using InputStream), but it does not hurt anyway - see:
+		//https://stackoverflow.com/questions/33083961/closing-jax-rs-client-response
+		Response response = null;
+		try {
+			response = modelTarget
+					.request(MediaType.APPLICATION_JSON)
+					.get();
+			if (response.getStatusInfo().equals(Response.Status.OK)){
+				//NOTE: when reading List entity in JAX-RS client you need to provide the GenericType instance (a hint 
+				//to JAX-RS how to deserialize)
+				List<MetroLocationDescription> result = response.readEntity(new GenericType<List<MetroLocationDescription>>() { });
+				return result;
+			}
+			else {
+				if (response.getStatusInfo().getFamily().equals(Response.Status.Family.SERVER_ERROR) || 
+						response.getStatusInfo().getFamily().equals(Response.Status.Family.CLIENT_ERROR)){
+					//in this case we can be sure that the server returned an {@link io.dropwizard.jersey.errors.ErrorMessage} 
+					//containing the description of the error - so we can use that to populate the Exception that we throw
+					ErrorMessage em = response.readEntity(ErrorMessage.class); 					
+					if(em.getDetails()!=null) {
+						throw new HttpRequestExecutionException("HTTP response status code is: "+response.getStatusInfo().getStatusCode()+" . Error description: "+em.getMessage()+ ". Details are: "+em.getDetails());
+					}
+					else {
+						throw new HttpRequestExecutionException("HTTP response status code is: "+response.getStatusInfo().getStatusCode()+" . Error description: "+em.getMessage());
+					}
+				}
+				else {
+					//the response status is not 200 or from 4xx or 5xx family
+					//so this is something really unusual... so unusual that we will throw exception...
+					throw new HttpRequestExecutionException("HTTP response status is: "+response.getStatusInfo().getStatusCode()+". This kind of response is not expected!");
+				}
+			}
+		}
+		catch(Exception e) {
+			//we will catch any kind of exception (checked and non-checked/runtime, HTTP transport exceptions and/or HTTP protocol 
+			//exceptions) and re-throw it as Exception. This will signal to the consumer that the HTTP request did not succeed.
+			throw new HttpRequestExecutionException("HTTP request failed!", e);
+		}
+		finally {
+			//Close response object to close underlying stream if it's not fully read.
+			if(response != null) {
+				response.close();
+			}
+		}
+	}
+
+
+
+
+
+
 	/**
 	 * Sends HTTP request containing the Metro location description, obtains HTTP response,
-	 * checks the response, and if not 200 OK throws exception. 
+	 * checks the response, and if not 201 Created or 200 OK throws exception. 
+	 * NOTE: the service answers 200 OK when there already is a Metro location description for the model and location (for 
+	 * example when this request is retried) and does not replace it. 
 	 * 
 	 * @param locationDescription The Metro location description object to sent to the service. 
+	 * @return The created Metro location description, or the stored one if it already existed.
 	 */	
 	public MetroLocationDescription insertMetroLocationDescription(MetroLocationDescription locationDescription) throws HttpRequestExecutionException{
 
@@ -404,7 +579,8 @@ public class MetaserviceSrvClient {
 					.post(Entity.json(locationDescription));
 			
 			
-			if (response.getStatusInfo().equals(Response.Status.CREATED)){				
+			//201 = created by this request, 200 = already existed
+			if (response.getStatusInfo().equals(Response.Status.CREATED) || response.getStatusInfo().equals(Response.Status.OK)){				
 				//NOTE: when reading entity in JAX-RS client you need to provide the GenericType instance (a hint 
 				//to JAX-RS how to deserialize)
 				//TODO: when Dropwizard metaservice returns HTTP status 201 = created it also automatically sends back JSON representing the created object.
@@ -427,9 +603,9 @@ public class MetaserviceSrvClient {
 						throw new HttpRequestExecutionException("HTTP response status code is: "+response.getStatusInfo().getStatusCode()+" . Error description: "+em.getMessage());
 					}
 				}
-				//TODO: maybe handling of some other HTTP response codes (except 201, 4xx and 5xx is needed).
+				//TODO: maybe handling of some other HTTP response codes (except 200, 201, 4xx and 5xx is needed).
 				else {
-					//the response status is not 201 or from 4xx or 5xx family
+					//the response status is not 200, 201 or from 4xx or 5xx family
 					//so this is something really unusual... so unusual that we will throw exception...
 					throw new HttpRequestExecutionException("HTTP response status is: "+response.getStatusInfo().getStatusCode()+". This kind of response is not expected!");
 				}
@@ -39,8 +39,10 @@ import com.cgs.jt.rwis.route.MobileSample;
 import com.cgs.jt.rwis.srvcs.conf.MeasurementServiceConf;
 import com.cgs.jt.rwis.srvcs.conf.MobileMeasurementServiceConf;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
 
 import io.dropwizard.jersey.errors.ErrorMessage;
 
@@ -120,6 +122,12 @@ public class MobileMeasurementSrvClient {
 				;
 		clientConfig.register(new JacksonJaxbJsonProvider(objectMapper,null));
 
+		//register the same ObjectMapper configuration for Smile (binary JSON) - used if a request accepts
+		//application/x-jackson-smile (services that do not support it answer with JSON)
+		ObjectMapper smileObjectMapper = new ObjectMapper(new SmileFactory())
+				.registerModule(new JavaTimeModule());
+		clientConfig.register(new JacksonSmileProvider(smileObjectMapper));
+
 		//ClientBuilder uses org.glassfish.jersey.client.JerseyClientBuilder
 		this.client = ClientBuilder.newClient(clientConfig);
 
@@ -42,8 +42,10 @@ import com.cgs.jt.rwis.srvcs.conf.SubscriptionServiceConf;
 import com.cgs.jt.rwis.srvcs.json.EarthSurfacePointMapKeyDeserializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
 
 import io.dropwizard.jersey.errors.ErrorMessage;
 
@@ -128,6 +130,13 @@ public class SubscriptionSrvClient {
 				;
 		clientConfig.register(new JacksonJaxbJsonProvider(objectMapper,null));
 
+		//register the same ObjectMapper configuration for Smile (binary JSON) - used if a request accepts
+		//application/x-jackson-smile (services that do not support it answer with JSON)
+		ObjectMapper smileObjectMapper = new ObjectMapper(new SmileFactory())
+				.registerModule(new JavaTimeModule())
+				.registerModule(new SimpleModule().addKeyDeserializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeyDeserializer()));
+		clientConfig.register(new JacksonSmileProvider(smileObjectMapper));
+
 		//ClientBuilder uses org.glassfish.jersey.client.JerseyClientBuilder
 		this.client = ClientBuilder.newClient(clientConfig);
 
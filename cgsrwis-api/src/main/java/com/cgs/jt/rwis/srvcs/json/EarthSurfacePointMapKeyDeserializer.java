@@ -21,6 +21,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * To achieve custom non-default deserialization of Map keys a custom key deserializer is needed.
  * NOTE: The custom deserializer needs to be register with the ObjectMapper - either using Jackson
  * annotations or using SimpleModule. 
+ * NOTE: Keys in the format written by {@link EarthSurfacePointMapKeySerializer} are parsed by hand (see {@link LocationMapKeys}), 
+ * any other JSON representation of the object is still accepted and parsed with an ObjectMapper.
  * 
  * @author Jernej Trnkoczy
  *
@@ -28,13 +30,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class EarthSurfacePointMapKeyDeserializer extends KeyDeserializer{
 
 	/**
-	 * Instance of {@link ObjectMapper} that is used to deserialize string into {@link EarthSurfacePoint} object.
+	 * Instance of {@link ObjectMapper} that is used to deserialize string into {@link EarthSurfacePoint} object (if the string 
+	 * is not in the format written by {@link EarthSurfacePointMapKeySerializer}).
 	 */
 	private static final ObjectMapper mapper = new ObjectMapper();
 
 	@Override
 	public Object deserializeKey(String key, DeserializationContext ctxt) throws IOException, JsonProcessingException {
-		//construct the EarthSurfacePoint object from the given string.		
-		return mapper.readValue(key, EarthSurfacePoint.class);				
+		//construct the EarthSurfacePoint object from the given string.
+		EarthSurfacePoint result = LocationMapKeys.parseEarthSurfacePoint(key);
+		if (result != null) {
+			return result;
+		}
+		return mapper.readValue(key, EarthSurfacePoint.class);
 	}
 }
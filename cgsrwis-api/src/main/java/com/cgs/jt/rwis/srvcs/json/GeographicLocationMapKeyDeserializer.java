@@ -22,6 +22,8 @@ import com.cgs.jt.rwis.api.GeographicLocation;
  * To achieve custom non-default deserialization of Map keys a custom key deserializer is needed.
  * NOTE: The custom deserializer needs to be register with the ObjectMapper - either using Jackson
  * annotations or using SimpleModule. 
+ * NOTE: Keys in the format written by {@link GeographicLocationMapKeySerializer} are parsed by hand (see {@link LocationMapKeys}), 
+ * any other JSON representation of the object is still accepted and parsed with an ObjectMapper.
  * 
  * @author Jernej Trnkoczy
  *
@@ -29,13 +31,18 @@ import com.cgs.jt.rwis.api.GeographicLocation;
 public class GeographicLocationMapKeyDeserializer extends KeyDeserializer{
 
 	/**
-	 * Instance of {@link ObjectMapper} that is used to deserialize string into {@link GeographicLocation} object.
+	 * Instance of {@link ObjectMapper} that is used to deserialize string into {@link GeographicLocation} object (if the string 
+	 * is not in the format written by {@link GeographicLocationMapKeySerializer}).
 	 */
 	private static final ObjectMapper mapper = new ObjectMapper();
 
 	@Override
 	public Object deserializeKey(String key, DeserializationContext ctxt) throws IOException, JsonProcessingException {
-		//construct the GeographicLocation object from the given string.		
-		return mapper.readValue(key, GeographicLocation.class);				
+		//construct the GeographicLocation object from the given string.
+		GeographicLocation result = LocationMapKeys.parseGeographicLocation(key);
+		if (result != null) {
+			return result;
+		}
+		return mapper.readValue(key, GeographicLocation.class);
 	}
 }
@@ -8,12 +8,11 @@
 package com.cgs.jt.rwis.srvcs.json;
 
 import java.io.IOException;
-import java.io.StringWriter;
 
+import com.cgs.jt.rwis.api.GeographicLocation;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializerProvider;
 
 /**
@@ -22,21 +21,16 @@ import com.fasterxml.jackson.databind.SerializerProvider;
  * To achieve custom non-default serialization of Map keys a custom key serializer is needed.
  * NOTE: The custom serializer needs to be register with the ObjectMapper - either using Jackson
  * annotations or using SimpleModule. 
+ * NOTE: The key is written by hand (see {@link LocationMapKeys}) - it is the same JSON string that an ObjectMapper 
+ * would write, but without running an ObjectMapper for each key.
  * 
  * @author Jernej Trnkoczy
  *
  */
 public class GeographicLocationMapKeySerializer extends JsonSerializer<Object> {
-	/**
-	 * Instance of {@link ObjectMapper} that is used to serialize {@link GeographicLocation} object into JSON.
-	 */
-	private static final ObjectMapper mapper = new ObjectMapper();
-
 	@Override
 	public void serialize(Object value, JsonGenerator gen, SerializerProvider serializers) throws IOException, JsonProcessingException {
 		//convert the given object into the JSON string you want as result
-		StringWriter writer = new StringWriter();
-        mapper.writeValue(writer, value);
-        gen.writeFieldName(writer.toString());
+		gen.writeFieldName(LocationMapKeys.write((GeographicLocation) value));
 	}
 }
\ No newline at end of file
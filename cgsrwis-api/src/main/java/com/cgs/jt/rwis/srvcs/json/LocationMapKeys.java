@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 1990, 2021, CGS Labs d.o.o and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. *
+ *
+ * Please contact CGS Labs d.o.o., Brnciceva ul. 13, SI-1000 Ljubljana, Slovenia
+ * or visit www.cgs-labs.com if you need additional information or have any questions.
+ */
+package com.cgs.jt.rwis.srvcs.json;
+
+import com.cgs.jt.rwis.api.EarthSurfacePoint;
+import com.cgs.jt.rwis.api.GeographicLocation;
+
+/**
+ * Hand-written writers and parsers of the Map keys used for {@link EarthSurfacePoint} and {@link GeographicLocation} 
+ * objects. The keys are the JSON strings of the objects exactly as written by a default ObjectMapper, for example 
+ * {"geoLocation":{"latitude":46.05,"longitude":14.5},"elevation":295.0} - so the format is compatible with 
+ * the previous (ObjectMapper based) serializers and deserializers. Writing and parsing a key does not need an 
+ * ObjectMapper, a Writer or a JsonParser. 
+ * 
+ * @author Jernej Trnkoczy
+ *
+ */
+final class LocationMapKeys {
+
+	private static final String LATITUDE = "{\"latitude\":";
+	private static final String LONGITUDE = ",\"longitude\":";
+	private static final String GEO_LOCATION = "{\"geoLocation\":";
+	private static final String ELEVATION = ",\"elevation\":";
+	private static final String NULL = "null";
+
+	private LocationMapKeys() {
+	}
+
+
+
+	static String write(GeographicLocation location) {
+		StringBuilder key = new StringBuilder(48);
+		append(key, location);
+		return key.toString();
+	}
+
+
+
+	static String write(EarthSurfacePoint point) {
+		StringBuilder key = new StringBuilder(80);
+		key.append(GEO_LOCATION);
+		append(key, point.getGeoLocation());
+		//NOTE: append(Object) - a null elevation is written as null (same as the ObjectMapper does)
+		key.append(ELEVATION).append((Object) point.getElevation()).append('}');
+		return key.toString();
+	}
+
+
+
+	private static void append(StringBuilder key, GeographicLocation location) {
+		if (location == null) {
+			key.append(NULL);
+			return;
+		}
+		//NOTE: Double.toString() is also used by the ObjectMapper to write doubles
+		key.append(LATITUDE).append((Object) location.getLatitude())
+			.append(LONGITUDE).append((Object) location.getLongitude())
+			.append('}');
+	}
+
+
+
+	/**
+	 * Parses the key written by {@link #write(GeographicLocation)}.
+	 * @return The location, or null if the key is not in the exact format written by {@link #write(GeographicLocation)} 
+	 * (in this case the caller should fall back to a full JSON parser).
+	 */
+	static GeographicLocation parseGeographicLocation(String key) {
+		return parseGeographicLocation(key, 0, key.length());
+	}
+
+
+
+	/**
+	 * Parses the key written by {@link #write(EarthSurfacePoint)}.
+	 * @return The point, or null if the key is not in the exact format written by {@link #write(EarthSurfacePoint)} 
+	 * (in this case the caller should fall back to a full JSON parser).
+	 */
+	static EarthSurfacePoint parseEarthSurfacePoint(String key) {
+		if (!key.startsWith(GEO_LOCATION) || key.charAt(key.length() - 1) != '}') {
+			return null;
+		}
+		int locationEnd = key.indexOf('}', GEO_LOCATION.length()) + 1;
+		if (locationEnd == 0 || !key.startsWith(ELEVATION, locationEnd)) {
+			return null;
+		}
+		GeographicLocation location = parseGeographicLocation(key, GEO_LOCATION.length(), locationEnd);
+		if (location == null) {
+			return null;
+		}
+		String elevation = key.substring(locationEnd + ELEVATION.length(), key.length() - 1);
+		if (elevation.equals(NULL)) {
+			return new EarthSurfacePoint(location, null);
+		}
+		Double value = parseDouble(elevation);
+		return value != null ? new EarthSurfacePoint(location, value) : null;
+	}
+
+
+
+	private static GeographicLocation parseGeographicLocation(String key, int start, int end) {
+		if (!key.startsWith(LATITUDE, start) || end - start < LATITUDE.length() + LONGITUDE.length() + 1 || key.charAt(end - 1) != '}') {
+			return null;
+		}
+		int longitudeStart = key.indexOf(',', start + LATITUDE.length());
+		if (longitudeStart < 0 || longitudeStart >= end || !key.startsWith(LONGITUDE, longitudeStart)) {
+			return null;
+		}
+		Double latitude = parseDouble(key.substring(start + LATITUDE.length(), longitudeStart));
+		Double longitude = parseDouble(key.substring(longitudeStart + LONGITUDE.length(), end - 1));
+		if (latitude == null || longitude == null) {
+			return null;
+		}
+		return new GeographicLocation(latitude, longitude);
+	}
+
+
+
+	private static Double parseDouble(String number) {
+		try {
+			return Double.parseDouble(number);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 1990, 2021, CGS Labs d.o.o and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. *
+ *
+ * Please contact CGS Labs d.o.o., Brnciceva ul. 13, SI-1000 Ljubljana, Slovenia
+ * or visit www.cgs-labs.com if you need additional information or have any questions.
+ */
+package com.cgs.jt.rwis.srvcs.json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.cgs.jt.rwis.api.EarthSurfacePoint;
+import com.cgs.jt.rwis.api.GeographicLocation;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * JMH benchmark of the {@link EarthSurfacePoint} map keys: the hand-written {@link LocationMapKeys} against the previous
+ * serializer and deserializer, which ran an ObjectMapper (into a new StringWriter) for every key. Both single keys and
+ * a whole map of {@value #KEYS} entries (as in GET /subscriptions/{model}) are written and read.
+ * The benchmark is not run by the build. Run it with its main method on the test classpath, for example:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test.classpath
+ * java -cp target/test-classes:target/classes:$(cat target/test.classpath) com.cgs.jt.rwis.srvcs.json.LocationMapKeysBenchmark
+ * </pre>
+ *
+ * @author Jernej Trnkoczy
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationMapKeysBenchmark {
+
+	private static final int KEYS = 10000;
+
+	private static final TypeReference<Map<EarthSurfacePoint, String>> MAP = new TypeReference<Map<EarthSurfacePoint, String>>() {
+	};
+
+	/**
+	 * Used by the previous serializer and deserializer.
+	 */
+	private static final ObjectMapper keyMapper = new ObjectMapper();
+
+	private EarthSurfacePoint[] points;
+	private String[] keys;
+	private Map<EarthSurfacePoint, String> map;
+	private String mapJson;
+
+	private ObjectMapper mapper;
+	private ObjectMapper previousMapper;
+
+
+
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(42);
+		points = new EarthSurfacePoint[KEYS];
+		keys = new String[KEYS];
+		map = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			double latitude = Math.round((45.4 + random.nextDouble() * 1.5) * 1e5) / 1e5;
+			double longitude = Math.round((13.4 + random.nextDouble() * 3.2) * 1e5) / 1e5;
+			Double elevation = random.nextInt(10) == 0 ? null : (double) (100 + random.nextInt(2000));
+			points[i] = new EarthSurfacePoint(new GeographicLocation(latitude, longitude), elevation);
+			keys[i] = LocationMapKeys.write(points[i]);
+			map.put(points[i], "customer" + i);
+		}
+
+		mapper = new ObjectMapper().registerModule(new SimpleModule()
+				.addKeySerializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeySerializer())
+				.addKeyDeserializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeyDeserializer()));
+		previousMapper = new ObjectMapper().registerModule(new SimpleModule()
+				.addKeySerializer(EarthSurfacePoint.class, new PreviousKeySerializer())
+				.addKeyDeserializer(EarthSurfacePoint.class, new PreviousKeyDeserializer()));
+		mapJson = mapper.writeValueAsString(map);
+	}
+
+
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void writeKey(Blackhole blackhole) {
+		for (EarthSurfacePoint point : points) {
+			blackhole.consume(LocationMapKeys.write(point));
+		}
+	}
+
+
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void writeKeyPrevious(Blackhole blackhole) throws IOException {
+		for (EarthSurfacePoint point : points) {
+			StringWriter writer = new StringWriter();
+			keyMapper.writeValue(writer, point);
+			blackhole.consume(writer.toString());
+		}
+	}
+
+
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void parseKey(Blackhole blackhole) {
+		for (String key : keys) {
+			blackhole.consume(LocationMapKeys.parseEarthSurfacePoint(key));
+		}
+	}
+
+
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void parseKeyPrevious(Blackhole blackhole) throws IOException {
+		for (String key : keys) {
+			blackhole.consume(keyMapper.readValue(key, EarthSurfacePoint.class));
+		}
+	}
+
+
+
+	@Benchmark
+	public String writeMap() throws IOException {
+		return mapper.writeValueAsString(map);
+	}
+
+
+
+	@Benchmark
+	public String writeMapPrevious() throws IOException {
+		return previousMapper.writeValueAsString(map);
+	}
+
+
+
+	@Benchmark
+	public Map<EarthSurfacePoint, String> readMap() throws IOException {
+		return mapper.readValue(mapJson, MAP);
+	}
+
+
+
+	@Benchmark
+	public Map<EarthSurfacePoint, String> readMapPrevious() throws IOException {
+		return previousMapper.readValue(mapJson, MAP);
+	}
+
+
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(LocationMapKeysBenchmark.class.getSimpleName()).build()).run();
+	}
+
+
+
+	/**
+	 * The previous {@link EarthSurfacePointMapKeySerializer}.
+	 */
+	private static class PreviousKeySerializer extends JsonSerializer<Object> {
+		@Override
+		public void serialize(Object value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+			StringWriter writer = new StringWriter();
+			keyMapper.writeValue(writer, value);
+			gen.writeFieldName(writer.toString());
+		}
+	}
+
+
+
+	/**
+	 * The previous {@link EarthSurfacePointMapKeyDeserializer}.
+	 */
+	private static class PreviousKeyDeserializer extends KeyDeserializer {
+		@Override
+		public Object deserializeKey(String key, DeserializationContext ctxt) throws IOException {
+			return keyMapper.readValue(key, EarthSurfacePoint.class);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 1990, 2021, CGS Labs d.o.o and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. *
+ *
+ * Please contact CGS Labs d.o.o., Brnciceva ul. 13, SI-1000 Ljubljana, Slovenia
+ * or visit www.cgs-labs.com if you need additional information or have any questions.
+ */
+package com.cgs.jt.rwis.srvcs.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.cgs.jt.rwis.api.EarthSurfacePoint;
+import com.cgs.jt.rwis.api.GeographicLocation;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Tests of {@link LocationMapKeys}: the keys must be the same strings as a default ObjectMapper writes (the format of 
+ * the previous serializers), and the deserializers must still accept any other JSON representation of the objects.
+ * 
+ * @author Jernej Trnkoczy
+ *
+ */
+class LocationMapKeysTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private static final List<GeographicLocation> LOCATIONS = Arrays.asList(
+			new GeographicLocation(46.05, 14.5),
+			new GeographicLocation(-33.8688, 151.2093),
+			new GeographicLocation(0.0, -0.0),
+			new GeographicLocation(45.0, 13.0),
+			new GeographicLocation(1.0E-5, 179.99999999999997));
+
+	private static final List<Double> ELEVATIONS = Arrays.asList(295.0, -2.5, 0.0, 1.0E7, 1234.5678, null);
+
+
+
+	@Test
+	void writesGeographicLocationsLikeObjectMapper() throws Exception {
+		for (GeographicLocation location : LOCATIONS) {
+			assertThat(LocationMapKeys.write(location)).isEqualTo(mapper.writeValueAsString(location));
+		}
+	}
+
+
+
+	@Test
+	void writesEarthSurfacePointsLikeObjectMapper() throws Exception {
+		for (EarthSurfacePoint point : points()) {
+			assertThat(LocationMapKeys.write(point)).isEqualTo(mapper.writeValueAsString(point));
+		}
+		EarthSurfacePoint withoutLocation = new EarthSurfacePoint(null, 295.0);
+		assertThat(LocationMapKeys.write(withoutLocation)).isEqualTo(mapper.writeValueAsString(withoutLocation));
+	}
+
+
+
+	@Test
+	void parsesWrittenKeys() {
+		for (GeographicLocation location : LOCATIONS) {
+			assertThat(LocationMapKeys.parseGeographicLocation(LocationMapKeys.write(location))).isEqualTo(location);
+		}
+		//NOTE: EarthSurfacePoint.equals() ignores the elevation, so the written keys are compared
+		for (EarthSurfacePoint point : points()) {
+			String key = LocationMapKeys.write(point);
+			EarthSurfacePoint parsed = LocationMapKeys.parseEarthSurfacePoint(key);
+			assertThat(parsed.getElevation()).isEqualTo(point.getElevation());
+			assertThat(LocationMapKeys.write(parsed)).isEqualTo(key);
+		}
+	}
+
+
+
+	@Test
+	void doesNotParseOtherFormats() {
+		assertThat(LocationMapKeys.parseGeographicLocation("{\"longitude\":14.5,\"latitude\":46.05}")).isNull();
+		assertThat(LocationMapKeys.parseGeographicLocation("{ \"latitude\": 46.05, \"longitude\": 14.5 }")).isNull();
+		assertThat(LocationMapKeys.parseGeographicLocation("{\"latitude\":\"46.05\",\"longitude\":14.5}")).isNull();
+		assertThat(LocationMapKeys.parseGeographicLocation("{\"latitude\":46.05}")).isNull();
+		assertThat(LocationMapKeys.parseEarthSurfacePoint("{\"elevation\":295.0,\"geoLocation\":{\"latitude\":46.05,\"longitude\":14.5}}")).isNull();
+		assertThat(LocationMapKeys.parseEarthSurfacePoint("{\"geoLocation\":{\"latitude\":46.05,\"longitude\":14.5}}")).isNull();
+		assertThat(LocationMapKeys.parseEarthSurfacePoint("{\"geoLocation\":null,\"elevation\":295.0}")).isNull();
+	}
+
+
+
+	@Test
+	void deserializersFallBackToObjectMapper() throws Exception {
+		EarthSurfacePoint point = new EarthSurfacePoint(new GeographicLocation(46.05, 14.5), 295.0);
+		Object parsed = new EarthSurfacePointMapKeyDeserializer().deserializeKey(
+				"{ \"elevation\": 295, \"geoLocation\": { \"longitude\": 14.5, \"latitude\": 46.05 } }", null);
+		assertThat(LocationMapKeys.write((EarthSurfacePoint) parsed)).isEqualTo(LocationMapKeys.write(point));
+		assertThat(new GeographicLocationMapKeyDeserializer().deserializeKey(
+				"{ \"longitude\": 14.5, \"latitude\": 46.05 }", null)).isEqualTo(point.getGeoLocation());
+	}
+
+
+
+	@Test
+	void mapRoundTrip() throws Exception {
+		ObjectMapper keyMapper = new ObjectMapper().registerModule(new SimpleModule()
+				.addKeySerializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeySerializer())
+				.addKeyDeserializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeyDeserializer())
+				.addKeySerializer(GeographicLocation.class, new GeographicLocationMapKeySerializer())
+				.addKeyDeserializer(GeographicLocation.class, new GeographicLocationMapKeyDeserializer()));
+
+		//one elevation per location (EarthSurfacePoint.equals() ignores the elevation), the values are the expected keys
+		Map<EarthSurfacePoint, String> points = new HashMap<>();
+		for (int i = 0; i < LOCATIONS.size(); i++) {
+			EarthSurfacePoint point = new EarthSurfacePoint(LOCATIONS.get(i), ELEVATIONS.get(i % ELEVATIONS.size()));
+			points.put(point, LocationMapKeys.write(point));
+		}
+		Map<EarthSurfacePoint, String> readPoints = keyMapper.readValue(keyMapper.writeValueAsString(points), new TypeReference<Map<EarthSurfacePoint, String>>() {
+		});
+		assertThat(readPoints).hasSameSizeAs(points);
+		for (Map.Entry<EarthSurfacePoint, String> entry : readPoints.entrySet()) {
+			assertThat(LocationMapKeys.write(entry.getKey())).isEqualTo(entry.getValue());
+		}
+
+		Map<GeographicLocation, String> locations = new HashMap<>();
+		for (GeographicLocation location : LOCATIONS) {
+			locations.put(location, LocationMapKeys.write(location));
+		}
+		assertThat(keyMapper.readValue(keyMapper.writeValueAsString(locations), new TypeReference<Map<GeographicLocation, String>>() {
+		})).isEqualTo(locations);
+	}
+
+
+
+	private static List<EarthSurfacePoint> points() {
+		List<EarthSurfacePoint> points = new ArrayList<>();
+		for (GeographicLocation location : LOCATIONS) {
+			for (Double elevation : ELEVATIONS) {
+				points.add(new EarthSurfacePoint(location, elevation));
+			}
+		}
+		return points;
+	}
+}
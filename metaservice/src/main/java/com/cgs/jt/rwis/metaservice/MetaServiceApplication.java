@@ -1,5 +1,10 @@
 package com.cgs.jt.rwis.metaservice;
 
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -10,14 +15,23 @@ import com.cgs.jt.rwis.metaservice.db.dao.*;
 import com.cgs.jt.rwis.metaservice.db.entity.*;
 import com.cgs.jt.rwis.metaservice.health.DatabaseHealthCheck;
 import com.cgs.jt.rwis.metaservice.health.TemplateHealthCheck;
+import com.cgs.jt.rwis.metaservice.metrics.ConnectionPoolMetricSet;
+import com.cgs.jt.rwis.metaservice.metrics.HibernateCacheMetricSet;
+import com.cgs.jt.rwis.metaservice.metrics.HibernateStatisticsMetricSet;
 import com.cgs.jt.rwis.metaservice.resources.*;
 import com.cgs.jt.rwis.srvcs.json.EarthSurfacePointMapKeySerializer;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
 import io.dropwizard.Application;
+import io.dropwizard.ConfiguredBundle;
 import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.hibernate.HibernateBundle;
+import io.dropwizard.hibernate.UnitOfWorkApplicationListener;
+import io.dropwizard.jackson.Jackson;
 import io.dropwizard.migrations.MigrationsBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
@@ -29,6 +43,10 @@ import io.swagger.v3.oas.annotations.info.License;
 import io.swagger.v3.oas.integration.SwaggerConfiguration;
 import io.swagger.v3.oas.models.OpenAPI;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 
 // https://github.com/swagger-api/swagger-core/wiki/Swagger-2.X---Getting-started
 // https://github.com/swagger-api/swagger-core/wiki/Swagger-2.X---Annotations
@@ -44,6 +62,12 @@ import org.glassfish.hk2.utilities.binding.AbstractBinder;
 public class MetaServiceApplication extends Application<MetaServiceConfiguration> {
     private static final Logger log = Logger.getLogger(MetaServiceApplication.class.getName());
 
+    private static final String REPLICA_BUNDLE_NAME = "hibernate-replica";
+
+    // Second-level cache regions of the replica session factory are named "replica.<entity>", so they are not shared with
+    // the primary session factory
+    private static final String REPLICA_CACHE_REGION_PREFIX = "replica";
+
     private final HibernateBundle<MetaServiceConfiguration> hibernateBundle = new HibernateBundle<MetaServiceConfiguration>(
             Model.class,
             MeasuredParameter.class,
@@ -53,11 +77,39 @@ public class MetaServiceApplication extends Application<MetaServiceConfiguration
             BaseCanSeeStation.class,
             Subscription.class,
             Location.class,
-            MetroConfig.class
+            MetroConfig.class,
+            DataVersion.class,
+            SubscriptionChange.class
     ) {
         @Override
         public DataSourceFactory getDataSourceFactory(MetaServiceConfiguration configuration) {
-            return configuration.getDataSourceFactory();
+            return withSlowQueryLog(configuration.getDataSourceFactory(), configuration);
+        }
+    };
+
+    // Used by the read-only resource methods (@UnitOfWork("hibernate-replica")). It is only run if a replica database
+    // is configured, otherwise the primary session factory is registered under its name.
+    private final HibernateBundle<MetaServiceConfiguration> replicaHibernateBundle = new HibernateBundle<MetaServiceConfiguration>(
+            Model.class,
+            MeasuredParameter.class,
+            ForecastedParameter.class,
+            ParameterOnStation.class,
+            Station.class,
+            BaseCanSeeStation.class,
+            Subscription.class,
+            Location.class,
+            MetroConfig.class,
+            DataVersion.class,
+            SubscriptionChange.class
+    ) {
+        @Override
+        protected String name() {
+            return REPLICA_BUNDLE_NAME;
+        }
+
+        @Override
+        public DataSourceFactory getDataSourceFactory(MetaServiceConfiguration configuration) {
+            return withSlowQueryLog(withPrimaryProperties(configuration.getReplicaDataSourceFactory(), configuration), configuration);
         }
     };
 
@@ -68,6 +120,9 @@ public class MetaServiceApplication extends Application<MetaServiceConfiguration
         }
     };
 
+    // Serves (and reads) application/x-jackson-smile, a binary encoding of the JSON data model
+    private final ObjectMapper smileObjectMapper = Jackson.newObjectMapper(new SmileFactory());
+
     private final SwaggerConfiguration swaggerConfig = new SwaggerConfiguration()
             .openAPI(new OpenAPI())
             .prettyPrint(true)
@@ -86,13 +141,27 @@ public class MetaServiceApplication extends Application<MetaServiceConfiguration
     public void initialize(final Bootstrap<MetaServiceConfiguration> bootstrap) {
         log.info("Initializing MetaService.");
         bootstrap.addBundle(hibernateBundle);
+        bootstrap.addBundle(new ConfiguredBundle<MetaServiceConfiguration>() {
+            @Override
+            public void run(MetaServiceConfiguration configuration, Environment environment) throws Exception {
+                if (configuration.getReplicaDataSourceFactory() != null)
+                    replicaHibernateBundle.run(configuration, environment);
+            }
+        });
         bootstrap.addBundle(migrationsBundle);
 
         //we get access to the Jackson ObjectMapper and register our custom key serializer/deserializer via SimpleModule
         //NOTE: pay attention that this same ObjectMapper is then later used/configured by dropwizard environment (i.e. the
         //code that reads Dropwizard config .yml file) - so settings done here might get overridden later...
         //however registering custom serializers/deserializers works without problem
-        ObjectMapper mapper = bootstrap.getObjectMapper();
+        configureObjectMapper(bootstrap.getObjectMapper());
+
+        //the Smile ObjectMapper needs the same custom serializers and settings
+        configureObjectMapper(smileObjectMapper);
+    }
+
+    // Custom serializers and settings of the JSON and the Smile ObjectMapper.
+    static ObjectMapper configureObjectMapper(ObjectMapper mapper) {
         SimpleModule module = new SimpleModule();
         module.addKeySerializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeySerializer());
         mapper.registerModule(module);
@@ -101,15 +170,25 @@ public class MetaServiceApplication extends Application<MetaServiceConfiguration
         //so we just need to configure the object mapper
         //see https://stackoverflow.com/questions/45662820/how-to-set-format-of-string-for-java-time-instant-using-objectmapper
         mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);//will produce {"time":"2017-08-14T12:17:47.720Z"}
-
+        return mapper;
     }
 
     @Override
     public void run(final MetaServiceConfiguration configuration, final Environment environment) {
         log.info("Running MetaService.");
 
-        // Openapi 3
-        environment.jersey().register(new OpenApiResource().openApiConfiguration(swaggerConfig));
+        // Openapi 3 (in fast start mode the spec generated at build time, if there is one)
+        Optional<PrebuiltOpenApiResource> prebuiltOpenApiResource = configuration.isFastStart() ? PrebuiltOpenApiResource.fromClasspath() : Optional.empty();
+        if (prebuiltOpenApiResource.isPresent()) {
+            environment.jersey().register(prebuiltOpenApiResource.get());
+        } else {
+            if (configuration.isFastStart())
+                log.warning("No OpenAPI spec generated at build time (" + PrebuiltOpenApiResource.SPEC + ", " + PrebuiltOpenApiResource.YAML_SPEC + "), scanning the resources.");
+            environment.jersey().register(new OpenApiResource().openApiConfiguration(swaggerConfig));
+        }
+
+        // Smile content negotiation (Accept: application/x-jackson-smile), JSON stays the default
+        environment.jersey().register(new JacksonSmileProvider(smileObjectMapper));
 
         // Registering resources
         environment.jersey().register(ModelResource.class);
@@ -118,21 +197,77 @@ public class MetaServiceApplication extends Application<MetaServiceConfiguration
         environment.jersey().register(StationResource.class);
         environment.jersey().register(SubscriptionResource.class);
         environment.jersey().register(MetroConfigResource.class);
+        environment.jersey().register(EventResource.class);
+
+        // Read-only requests go to the replica database if there is one, otherwise to the primary one
+        final SessionFactory sessionFactory = hibernateBundle.getSessionFactory();
+        final SessionFactory replicaSessionFactory;
+        if (configuration.getReplicaDataSourceFactory() != null) {
+            replicaSessionFactory = replicaHibernateBundle.getSessionFactory();
+        } else {
+            replicaSessionFactory = sessionFactory;
+            unitOfWorkApplicationListener(environment).registerSessionFactory(REPLICA_BUNDLE_NAME, sessionFactory);
+        }
+
+        // Registering metrics (resource methods are timed with @Timed, asynchronous ones with AsyncTimers, see the resources)
+        environment.metrics().register("hibernate", new HibernateStatisticsMetricSet(sessionFactory));
+        environment.metrics().register("hibernate.cache", new HibernateCacheMetricSet(sessionFactory,
+                Model.class, MeasuredParameter.class, ForecastedParameter.class));
+        environment.metrics().register("hibernate.pool", new ConnectionPoolMetricSet(pooledDataSource(sessionFactory)));
+        if (replicaSessionFactory != sessionFactory) {
+            environment.metrics().register(REPLICA_BUNDLE_NAME, new HibernateStatisticsMetricSet(replicaSessionFactory));
+            environment.metrics().register(REPLICA_BUNDLE_NAME + ".pool", new ConnectionPoolMetricSet(pooledDataSource(replicaSessionFactory)));
+        }
+
+        // Startup time: from the start of the JVM until the connectors accept requests
+        environment.lifecycle().addServerLifecycleListener(server ->
+                log.info("MetaService started in " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms."));
 
         // Registering health checks
         final TemplateHealthCheck healthCheck = new TemplateHealthCheck(configuration.getTemplate());
-        final DatabaseHealthCheck databaseHealthCheck = new DatabaseHealthCheck(configuration.getDataSourceFactory());
         environment.healthChecks().register("template", healthCheck);
-        environment.healthChecks().register("database", databaseHealthCheck);
+        environment.healthChecks().register("database", databaseHealthCheck("database", sessionFactory, configuration, environment));
+        if (replicaSessionFactory != sessionFactory) {
+            environment.healthChecks().register("database-replica", databaseHealthCheck("database-replica", replicaSessionFactory, configuration, environment));
+        }
 
         // Initializing DAO's
-        final ModelDAO modelDAO = new ModelDAO(hibernateBundle.getSessionFactory());
-        final MeasuredParameterDAO measuredParameterDAO = new MeasuredParameterDAO(hibernateBundle.getSessionFactory());
-        final ForecastedParameterDAO forecastedParameterDAO = new ForecastedParameterDAO(hibernateBundle.getSessionFactory());
-        final StationDAO stationDAO = new StationDAO(hibernateBundle.getSessionFactory());
-        final SubscriptionDAO subscriptionDAO = new SubscriptionDAO(hibernateBundle.getSessionFactory());
-        final MetroConfigDAO metroConfigDAO = new MetroConfigDAO(hibernateBundle.getSessionFactory());
-        final LocationDAO locationDAO = new LocationDAO(hibernateBundle.getSessionFactory());
+        final ModelDAO modelDAO = new ModelDAO(sessionFactory, replicaSessionFactory);
+        final MeasuredParameterDAO measuredParameterDAO = new MeasuredParameterDAO(sessionFactory, replicaSessionFactory);
+        final ForecastedParameterDAO forecastedParameterDAO = new ForecastedParameterDAO(sessionFactory, replicaSessionFactory);
+        final StationDAO stationDAO = new StationDAO(sessionFactory, replicaSessionFactory);
+        final SubscriptionDAO subscriptionDAO = new SubscriptionDAO(sessionFactory, replicaSessionFactory);
+        final MetroConfigDAO metroConfigDAO = new MetroConfigDAO(sessionFactory, replicaSessionFactory);
+        final LocationDAO locationDAO = new LocationDAO(sessionFactory, replicaSessionFactory);
+        final DataVersionDAO dataVersionDAO = new DataVersionDAO(sessionFactory, replicaSessionFactory);
+        final SubscriptionChangeDAO subscriptionChangeDAO = new SubscriptionChangeDAO(sessionFactory, replicaSessionFactory);
+
+        // Shared in-memory state
+        final SubscriptionSnapshotCache subscriptionSnapshotCache = new SubscriptionSnapshotCache(configuration.getSubscriptionSnapshotCheckInterval());
+        final MetroConfigCache metroConfigCache = new MetroConfigCache(configuration.getMetroConfigCacheSize(), configuration.getMetroConfigCheckInterval());
+        final Map<String, Class<?>> cachedEntities = new HashMap<>();
+        cachedEntities.put(DataVersionService.MODELS, Model.class);
+        cachedEntities.put(DataVersionService.MEASURED_PARAMETERS, MeasuredParameter.class);
+        cachedEntities.put(DataVersionService.FORECASTED_PARAMETERS, ForecastedParameter.class);
+        final EntityCacheVersions entityCacheVersions = new EntityCacheVersions(cachedEntities);
+        final EventPublisher eventPublisher = new EventPublisher();
+        environment.lifecycle().manage(eventPublisher);
+        final RequestCoalescer requestCoalescer = new RequestCoalescer(environment.metrics());
+        // One thread per (primary) database connection
+        final DatabaseExecutor databaseExecutor = new DatabaseExecutor(configuration.getDataSourceFactory().getMaxSize(),
+                configuration.getDatabaseExecutorQueueSize(), configuration.isVirtualThreads(), sessionFactory, replicaSessionFactory, environment.metrics());
+        environment.lifecycle().manage(databaseExecutor);
+
+        // Subscription changes older than the retention are deleted once an hour
+        environment.lifecycle().scheduledExecutorService("subscription-change-pruner").build()
+                .scheduleWithFixedDelay(new SubscriptionChangePruner(sessionFactory, subscriptionChangeDAO, configuration.getSubscriptionChangeRetention()),
+                        1, 60, TimeUnit.MINUTES);
+
+        // Subscription changes are published as events from the database log
+        long eventPollMillis = configuration.getEventPollInterval().toMilliseconds();
+        environment.lifecycle().scheduledExecutorService("subscription-event-poller").build()
+                .scheduleWithFixedDelay(new SubscriptionEventPoller(sessionFactory, dataVersionDAO, subscriptionChangeDAO, eventPublisher),
+                        0, eventPollMillis, TimeUnit.MILLISECONDS);
 
         // Registering classes for use by HK2 dependency injection library
         environment.jersey().register(new AbstractBinder() {
@@ -145,6 +280,7 @@ public class MetaServiceApplication extends Application<MetaServiceConfiguration
                 bindAsContract(StationService.class);
                 bindAsContract(SubscriptionService.class);
                 bindAsContract(MetroConfigService.class);
+                bindAsContract(DataVersionService.class);
 
                 // DAO classes
                 bind(modelDAO).to(ModelDAO.class);
@@ -154,7 +290,64 @@ public class MetaServiceApplication extends Application<MetaServiceConfiguration
                 bind(subscriptionDAO).to(SubscriptionDAO.class);
                 bind(metroConfigDAO).to(MetroConfigDAO.class);
                 bind(locationDAO).to(LocationDAO.class);
+                bind(dataVersionDAO).to(DataVersionDAO.class);
+                bind(subscriptionChangeDAO).to(SubscriptionChangeDAO.class);
+
+                // Shared in-memory state
+                bind(subscriptionSnapshotCache).to(SubscriptionSnapshotCache.class);
+                bind(metroConfigCache).to(MetroConfigCache.class);
+                bind(entityCacheVersions).to(EntityCacheVersions.class);
+                bind(eventPublisher).to(EventPublisher.class);
+                bind(requestCoalescer).to(RequestCoalescer.class);
+                bind(databaseExecutor).to(DatabaseExecutor.class);
+
+                // Timers of the asynchronous resource methods
+                bind(environment.metrics()).to(MetricRegistry.class);
+
+                // Dropwizard's configured ObjectMapper (used for streamed responses)
+                bind(environment.getObjectMapper()).to(ObjectMapper.class);
             }
         });
     }
+
+    // Lets Hibernate log queries slower than the configured threshold (Hibernate reads its settings from the database
+    // properties).
+    private static DataSourceFactory withSlowQueryLog(DataSourceFactory database, MetaServiceConfiguration configuration) {
+        if (database != null) {
+            database.getProperties().put(AvailableSettings.LOG_SLOW_QUERY,
+                    String.valueOf(configuration.getSlowQueryThreshold().toMilliseconds()));
+        }
+        return database;
+    }
+
+    // The replica uses the same (e.g. Hibernate cache and JDBC batch) properties as the primary database, unless it sets
+    // them itself.
+    private static DataSourceFactory withPrimaryProperties(DataSourceFactory replica, MetaServiceConfiguration configuration) {
+        if (replica != null) {
+            configuration.getDataSourceFactory().getProperties().forEach(replica.getProperties()::putIfAbsent);
+            replica.getProperties().putIfAbsent(AvailableSettings.CACHE_REGION_PREFIX, REPLICA_CACHE_REGION_PREFIX);
+        }
+        return replica;
+    }
+
+    private static DatabaseHealthCheck databaseHealthCheck(String name, SessionFactory sessionFactory, MetaServiceConfiguration configuration, Environment environment) {
+        return new DatabaseHealthCheck(name, pooledDataSource(sessionFactory), configuration.getDatabaseHealthTimeout(),
+                configuration.getDatabaseHealthMaxPoolUtilization(), configuration.getDatabaseHealthMaxConnectionWait(), environment.metrics());
+    }
+
+    // The (Tomcat JDBC) connection pool that the Hibernate bundle built for the session factory.
+    private static org.apache.tomcat.jdbc.pool.DataSource pooledDataSource(SessionFactory sessionFactory) {
+        return ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+                .getService(ConnectionProvider.class)
+                .unwrap(org.apache.tomcat.jdbc.pool.DataSource.class);
+    }
+
+    // The listener that opens sessions for @UnitOfWork, registered by the (primary) Hibernate bundle.
+    private static UnitOfWorkApplicationListener unitOfWorkApplicationListener(Environment environment) {
+        for (Object singleton : environment.jersey().getResourceConfig().getSingletons()) {
+            if (singleton instanceof UnitOfWorkApplicationListener)
+                return (UnitOfWorkApplicationListener) singleton;
+        }
+        throw new IllegalStateException("Hibernate bundle is not registered");
+    }
 }
@@ -3,8 +3,12 @@ package com.cgs.jt.rwis.metaservice;
 import io.dropwizard.Configuration;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.Duration;
 
 import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 
@@ -19,6 +23,60 @@ public class MetaServiceConfiguration extends Configuration {
     @NotNull
     private DataSourceFactory database = new DataSourceFactory();
 
+    // Optional streaming replica of the database, used by the read-only resource methods
+    @Valid
+    private DataSourceFactory replicaDatabase;
+
+    // Maximum number of deserialized METRO configs kept in memory
+    @Min(0)
+    private long metroConfigCacheSize = 10000;
+
+    // A cached METRO config is served for this long after the version of the configs of its model was read from the
+    // database
+    @NotNull
+    private Duration metroConfigCheckInterval = Duration.seconds(1);
+
+    // Subscription changes are read from the database and published as events (GET /events) this often
+    @NotNull
+    private Duration eventPollInterval = Duration.seconds(1);
+
+    // The subscriptions of a model are served from memory for this long after their version was compared with the
+    // version in the database
+    @NotNull
+    private Duration subscriptionSnapshotCheckInterval = Duration.seconds(1);
+
+    // Subscription changes older than this are deleted from the database
+    @NotNull
+    private Duration subscriptionChangeRetention = Duration.days(7);
+
+    // Maximum number of asynchronous requests waiting for a database thread before they are rejected with 503
+    @Min(1)
+    private int databaseExecutorQueueSize = 256;
+
+    // Run the database work of asynchronous requests on virtual threads (needs Java 21+, ignored otherwise)
+    private boolean virtualThreads = false;
+
+    // Queries running longer than this are logged (org.hibernate.SQL_SLOW logger), 0 disables the log
+    @NotNull
+    private Duration slowQueryThreshold = Duration.milliseconds(500);
+
+    // The database health check fails if the validation query takes longer than this
+    @NotNull
+    private Duration databaseHealthTimeout = Duration.seconds(2);
+
+    // The database health check reports the instance as degraded (unhealthy) from this share of connections in use
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double databaseHealthMaxPoolUtilization = 0.9;
+
+    // ... or when the health check waits longer than this for a connection
+    @NotNull
+    private Duration databaseHealthMaxConnectionWait = Duration.milliseconds(250);
+
+    // Serve the OpenAPI spec generated at build time instead of scanning the resources on the first spec request (does
+    // not change the startup time)
+    private boolean fastStart = false;
+
     @JsonProperty
     public String getTemplate() {
         return template;
@@ -39,6 +97,126 @@ public class MetaServiceConfiguration extends Configuration {
         this.defaultName = name;
     }
 
+    @JsonProperty
+    public long getMetroConfigCacheSize() {
+        return metroConfigCacheSize;
+    }
+
+    @JsonProperty
+    public void setMetroConfigCacheSize(long metroConfigCacheSize) {
+        this.metroConfigCacheSize = metroConfigCacheSize;
+    }
+
+    @JsonProperty
+    public Duration getMetroConfigCheckInterval() {
+        return metroConfigCheckInterval;
+    }
+
+    @JsonProperty
+    public void setMetroConfigCheckInterval(Duration metroConfigCheckInterval) {
+        this.metroConfigCheckInterval = metroConfigCheckInterval;
+    }
+
+    @JsonProperty
+    public Duration getEventPollInterval() {
+        return eventPollInterval;
+    }
+
+    @JsonProperty
+    public void setEventPollInterval(Duration eventPollInterval) {
+        this.eventPollInterval = eventPollInterval;
+    }
+
+    @JsonProperty
+    public Duration getSubscriptionSnapshotCheckInterval() {
+        return subscriptionSnapshotCheckInterval;
+    }
+
+    @JsonProperty
+    public void setSubscriptionSnapshotCheckInterval(Duration subscriptionSnapshotCheckInterval) {
+        this.subscriptionSnapshotCheckInterval = subscriptionSnapshotCheckInterval;
+    }
+
+    @JsonProperty
+    public Duration getSubscriptionChangeRetention() {
+        return subscriptionChangeRetention;
+    }
+
+    @JsonProperty
+    public void setSubscriptionChangeRetention(Duration subscriptionChangeRetention) {
+        this.subscriptionChangeRetention = subscriptionChangeRetention;
+    }
+
+    @JsonProperty
+    public int getDatabaseExecutorQueueSize() {
+        return databaseExecutorQueueSize;
+    }
+
+    @JsonProperty
+    public void setDatabaseExecutorQueueSize(int databaseExecutorQueueSize) {
+        this.databaseExecutorQueueSize = databaseExecutorQueueSize;
+    }
+
+    @JsonProperty
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    @JsonProperty
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @JsonProperty
+    public Duration getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    @JsonProperty
+    public void setSlowQueryThreshold(Duration slowQueryThreshold) {
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    @JsonProperty
+    public Duration getDatabaseHealthTimeout() {
+        return databaseHealthTimeout;
+    }
+
+    @JsonProperty
+    public void setDatabaseHealthTimeout(Duration databaseHealthTimeout) {
+        this.databaseHealthTimeout = databaseHealthTimeout;
+    }
+
+    @JsonProperty
+    public double getDatabaseHealthMaxPoolUtilization() {
+        return databaseHealthMaxPoolUtilization;
+    }
+
+    @JsonProperty
+    public void setDatabaseHealthMaxPoolUtilization(double databaseHealthMaxPoolUtilization) {
+        this.databaseHealthMaxPoolUtilization = databaseHealthMaxPoolUtilization;
+    }
+
+    @JsonProperty
+    public Duration getDatabaseHealthMaxConnectionWait() {
+        return databaseHealthMaxConnectionWait;
+    }
+
+    @JsonProperty
+    public void setDatabaseHealthMaxConnectionWait(Duration databaseHealthMaxConnectionWait) {
+        this.databaseHealthMaxConnectionWait = databaseHealthMaxConnectionWait;
+    }
+
+    @JsonProperty
+    public boolean isFastStart() {
+        return fastStart;
+    }
+
+    @JsonProperty
+    public void setFastStart(boolean fastStart) {
+        this.fastStart = fastStart;
+    }
+
     @JsonProperty("database")
     public DataSourceFactory getDataSourceFactory() {
         return database;
@@ -48,4 +226,14 @@ public class MetaServiceConfiguration extends Configuration {
     public void setDataSourceFactory(DataSourceFactory dataSourceFactory) {
         this.database = dataSourceFactory;
     }
+
+    @JsonProperty("replicaDatabase")
+    public DataSourceFactory getReplicaDataSourceFactory() {
+        return replicaDatabase;
+    }
+
+    @JsonProperty("replicaDatabase")
+    public void setReplicaDataSourceFactory(DataSourceFactory replicaDataSourceFactory) {
+        this.replicaDatabase = replicaDataSourceFactory;
+    }
 }
@@ -1,5 +1,7 @@
 package com.cgs.jt.rwis.metaservice.api;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.Set;
 
 public class StationDTO {
@@ -15,8 +17,11 @@ public class StationDTO {
 
     protected String costumerId;
 
+    // Null (and omitted) when not included (GET /stations?include=...)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<ParameterOnStationDTO> parameterOnStationSet;
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<BaseCanSeeStationDTO> baseCanSeeStationSet;
 
 
@@ -0,0 +1,50 @@
+package com.cgs.jt.rwis.metaservice.api;
+
+import com.cgs.jt.rwis.api.ParameterForecastSubscription;
+
+public class SubscriptionChangeDTO {
+    public enum Type {
+        CREATED,
+        DELETED
+    }
+
+    // All the changes committed together share the same version.
+    private long version;
+
+    private Type type;
+
+    private ParameterForecastSubscription subscription;
+
+    public SubscriptionChangeDTO() {
+    }
+
+    public SubscriptionChangeDTO(long version, Type type, ParameterForecastSubscription subscription) {
+        this.version = version;
+        this.type = type;
+        this.subscription = subscription;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public ParameterForecastSubscription getSubscription() {
+        return subscription;
+    }
+
+    public void setSubscription(ParameterForecastSubscription subscription) {
+        this.subscription = subscription;
+    }
+}
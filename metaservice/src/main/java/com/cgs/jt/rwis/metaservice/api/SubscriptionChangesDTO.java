@@ -0,0 +1,34 @@
+package com.cgs.jt.rwis.metaservice.api;
+
+import java.util.List;
+
+public class SubscriptionChangesDTO {
+    // Version to use as "since" in the next request.
+    private long version;
+
+    private List<SubscriptionChangeDTO> changes;
+
+    public SubscriptionChangesDTO() {
+    }
+
+    public SubscriptionChangesDTO(long version, List<SubscriptionChangeDTO> changes) {
+        this.version = version;
+        this.changes = changes;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public List<SubscriptionChangeDTO> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<SubscriptionChangeDTO> changes) {
+        this.changes = changes;
+    }
+}
@@ -0,0 +1,98 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+// Latitude/longitude rectangle (in degrees) used for spatial lookups. Rectangles crossing the antimeridian are not
+// supported.
+public class BoundingBox {
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+
+    public BoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    // Parses "minLon,minLat,maxLon,maxLat" (the GeoJSON/OGC bbox order).
+    public static BoundingBox parse(String bbox) {
+        if (bbox == null)
+            throw new WebApplicationException("Parameter bbox is required", Response.Status.BAD_REQUEST);
+
+        String[] parts = bbox.split(",");
+        if (parts.length != 4)
+            throw new WebApplicationException("Parameter bbox must be minLon,minLat,maxLon,maxLat", Response.Status.BAD_REQUEST);
+
+        double[] values = new double[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                values[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new WebApplicationException("Parameter bbox must be minLon,minLat,maxLon,maxLat", Response.Status.BAD_REQUEST);
+            }
+        }
+
+        double minLongitude = values[0], minLatitude = values[1], maxLongitude = values[2], maxLatitude = values[3];
+        if (minLatitude < -90 || maxLatitude > 90 || minLongitude < -180 || maxLongitude > 180)
+            throw new WebApplicationException("Parameter bbox is out of range", Response.Status.BAD_REQUEST);
+        if (minLatitude > maxLatitude || minLongitude > maxLongitude)
+            throw new WebApplicationException("Parameter bbox minimums must not exceed maximums", Response.Status.BAD_REQUEST);
+
+        return new BoundingBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+    }
+
+    // Smallest box containing the circle with the given center and radius.
+    public static BoundingBox around(double latitude, double longitude, double radiusKm) {
+        double deltaLatitude = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        double minLatitude = latitude - deltaLatitude;
+        double maxLatitude = latitude + deltaLatitude;
+
+        // Close to the poles (or the antimeridian) the circle spans all the longitudes.
+        double cosLatitude = Math.cos(Math.toRadians(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude))));
+        double deltaLongitude = maxLatitude >= 90 || minLatitude <= -90 ? 180 : Math.toDegrees(radiusKm / (EARTH_RADIUS_KM * cosLatitude));
+        double minLongitude = longitude - deltaLongitude;
+        double maxLongitude = longitude + deltaLongitude;
+        if (minLongitude < -180 || maxLongitude > 180) {
+            minLongitude = -180;
+            maxLongitude = 180;
+        }
+
+        return new BoundingBox(Math.max(minLatitude, -90), minLongitude, Math.min(maxLatitude, 90), maxLongitude);
+    }
+
+    // Great-circle (haversine) distance between two points.
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double deltaLatitude = Math.toRadians(latitude2 - latitude1);
+        double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(deltaLatitude / 2) * Math.sin(deltaLatitude / 2) +
+                Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * Math.sin(deltaLongitude / 2) * Math.sin(deltaLongitude / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    @Override
+    public String toString() {
+        return minLongitude + "," + minLatitude + "," + maxLongitude + "," + maxLatitude;
+    }
+}
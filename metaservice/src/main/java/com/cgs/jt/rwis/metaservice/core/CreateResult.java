@@ -0,0 +1,20 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+// Result of an idempotent create: the object and whether this request created it (201) or it already existed (200).
+public class CreateResult<T> {
+    private final T item;
+    private final boolean created;
+
+    public CreateResult(T item, boolean created) {
+        this.item = item;
+        this.created = created;
+    }
+
+    public T getItem() {
+        return item;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+}
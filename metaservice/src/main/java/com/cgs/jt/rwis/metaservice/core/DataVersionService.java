@@ -0,0 +1,68 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.metaservice.db.dao.DataVersionDAO;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Versions of the data, used as ETags of the GET responses and to tell whether cached data is current. They are read
+// from the data_version table, which the triggers of the tables update in the transaction that changes the data, so
+// they cover the changes of every instance of the service and the changes made directly in the database.
+//
+// Read the version in the unit of work that reads the data, before the data: data newer than its version only makes
+// the client read it again, a version newer than the data would let the client keep data it does not have. Reading a
+// version also evicts the second-level cache of the table if it changed (see EntityCacheVersions).
+public class DataVersionService {
+    public static final String MODELS = "models";
+    public static final String STATIONS = "stations";
+    public static final String MEASURED_PARAMETERS = "measured-parameters";
+    public static final String FORECASTED_PARAMETERS = "forecasted-parameters";
+    public static final String SUBSCRIPTIONS = "subscriptions";
+    public static final String METRO_CONFIGS = "metro-configs";
+    // Not the version of data: the subscription changes up to this version were deleted (see SubscriptionChangeDAO)
+    public static final String SUBSCRIPTION_CHANGES_PRUNED = "subscription-changes-pruned";
+
+    @Inject
+    private DataVersionDAO dao;
+
+    @Inject
+    private EntityCacheVersions entityCacheVersions;
+
+    // Version of the data of the given tables, e.g. "17" or "17.42" for two tables.
+    public String getVersion(String... tables) {
+        Map<String, Long> versions = findVersions(Arrays.asList(tables));
+        return Arrays.stream(tables)
+                .map(table -> String.valueOf(versions.getOrDefault(table, 0L)))
+                .collect(Collectors.joining("."));
+    }
+
+    public long getTableVersion(String table) {
+        return findVersions(Collections.singletonList(table)).getOrDefault(table, 0L);
+    }
+
+    // Version of the rows of the table that belong to the model. Until they are changed for the first time it is the
+    // version of the table.
+    public long getModelVersion(String table, String modelName) {
+        String modelTable = table + "/" + modelName;
+        Map<String, Long> versions = findVersions(Arrays.asList(table, modelTable));
+        return versions.containsKey(modelTable) ? versions.get(modelTable) : versions.getOrDefault(table, 0L);
+    }
+
+    // The changes of the subscriptions of the model up to this version are no longer in the subscription_change table,
+    // either pruned with the model's changes or with all the changes (truncate).
+    public long getSubscriptionChangesPrunedVersion(String modelName) {
+        String modelPruned = SUBSCRIPTION_CHANGES_PRUNED + "/" + modelName;
+        Map<String, Long> versions = findVersions(Arrays.asList(SUBSCRIPTION_CHANGES_PRUNED, modelPruned));
+        return Math.max(versions.getOrDefault(SUBSCRIPTION_CHANGES_PRUNED, 0L), versions.getOrDefault(modelPruned, 0L));
+    }
+
+    private Map<String, Long> findVersions(List<String> names) {
+        Map<String, Long> versions = dao.findVersions(names);
+        entityCacheVersions.check(dao.currentSessionFactory(), versions);
+        return versions;
+    }
+}
@@ -0,0 +1,159 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.context.internal.ManagedSessionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// Runs the database work of asynchronous (@Suspended AsyncResponse) resource methods, so Jetty request threads are not
+// blocked on the database; the response is resumed when the returned future completes. The pool has as many threads as
+// there are database connections and a bounded queue; when both are full the future fails with 503 right away. Work
+// runs in its own read-only unit of work (@UnitOfWork only binds a session to the request thread). A single instance is
+// shared by all requests.
+//
+// @Timed on an asynchronous resource method would only time the hand-off to this executor, so those methods are timed
+// until their response is resumed instead (AsyncTimers in the resources package); database.executor.duration times
+// the work run here.
+//
+// With virtual threads every task gets its own virtual thread instead. The same limits are then enforced with
+// semaphores: at most threads tasks use the database at once, at most threads + queueSize tasks are accepted.
+public class DatabaseExecutor implements Managed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseExecutor.class);
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final SessionFactory sessionFactory;
+    private final SessionFactory replicaSessionFactory;
+    private final ExecutorService executor;
+    private final Meter rejected;
+
+    // Only used with virtual threads.
+    private final Semaphore accepted;
+    private final Semaphore running;
+
+    public DatabaseExecutor(int threads, int queueSize, boolean virtualThreads, SessionFactory sessionFactory, SessionFactory replicaSessionFactory, MetricRegistry metrics) {
+        this.sessionFactory = sessionFactory;
+        this.replicaSessionFactory = replicaSessionFactory;
+        this.rejected = metrics.meter("database.executor.rejected");
+
+        Optional<ExecutorService> virtualThreadExecutor = virtualThreads ? VirtualThreads.newVirtualThreadPerTaskExecutor() : Optional.empty();
+        if (virtualThreads && !virtualThreadExecutor.isPresent())
+            LOGGER.warn("Virtual threads are not available in this JVM (Java 21+ is required), using platform threads.");
+
+        if (virtualThreadExecutor.isPresent()) {
+            this.accepted = new Semaphore(threads + queueSize);
+            this.running = new Semaphore(threads);
+            this.executor = new InstrumentedExecutorService(virtualThreadExecutor.get(), metrics, "database.executor");
+            metrics.register("database.executor.queue-depth", (Gauge<Integer>) () ->
+                    (threads + queueSize - accepted.availablePermits()) - (threads - running.availablePermits()));
+        } else {
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+            this.accepted = null;
+            this.running = null;
+            this.executor = new InstrumentedExecutorService(threadPool, metrics, "database.executor");
+            metrics.register("database.executor.queue-depth", (Gauge<Integer>) () -> threadPool.getQueue().size());
+        }
+    }
+
+    // Runs the work on the primary database. The future completes with the result of the work or its exception.
+    public <T> CompletableFuture<T> onPrimary(Supplier<T> work) {
+        return submit(sessionFactory, work);
+    }
+
+    // Runs the work on the replica database (the primary one if there is no replica).
+    public <T> CompletableFuture<T> onReplica(Supplier<T> work) {
+        return submit(replicaSessionFactory, work);
+    }
+
+    private <T> CompletableFuture<T> submit(SessionFactory factory, Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (accepted != null && !accepted.tryAcquire()) {
+            result.completeExceptionally(rejected());
+            return result;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(accepted != null ? inReadOnlyUnitOfWorkWhenRunning(factory, work) : inReadOnlyUnitOfWork(factory, work));
+                } catch (Throwable e) {
+                    // Also errors (e.g. OutOfMemoryError), the request must not wait for a future that never completes.
+                    result.completeExceptionally(e);
+                } finally {
+                    if (accepted != null)
+                        accepted.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (accepted != null)
+                accepted.release();
+            result.completeExceptionally(rejected());
+        }
+        return result;
+    }
+
+    // Mapped to a 503 response like any other WebApplicationException.
+    private WebApplicationException rejected() {
+        rejected.mark();
+        return new WebApplicationException(Response
+                .status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .build());
+    }
+
+    // Blocking on the semaphore is cheap for a virtual thread, this is its "queue".
+    private <T> T inReadOnlyUnitOfWorkWhenRunning(SessionFactory factory, Supplier<T> work) {
+        running.acquireUninterruptibly();
+        try {
+            return inReadOnlyUnitOfWork(factory, work);
+        } finally {
+            running.release();
+        }
+    }
+
+    private static <T> T inReadOnlyUnitOfWork(SessionFactory factory, Supplier<T> work) {
+        Session session = factory.openSession();
+        try {
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            ManagedSessionContext.bind(session);
+
+            Transaction transaction = session.beginTransaction();
+            try {
+                T result = work.get();
+                transaction.commit();
+                return result;
+            } catch (Throwable e) {
+                if (transaction.isActive())
+                    transaction.rollback();
+                throw e;
+            }
+        } finally {
+            ManagedSessionContext.unbind(factory);
+            session.close();
+        }
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,45 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Keeps the Hibernate second-level cache of this instance (cached entities and cacheable queries) in line with the data
+// versions (see DataVersionService). Hibernate only invalidates it on commits of the same session factory: when a
+// version read from the database is newer than the last one seen, the table was changed through another instance or
+// directly in the database, and its cached entities and the cached query results are evicted before they are read.
+// The regions also expire (application.conf), for reads that do not read the version. A single instance is shared by
+// all requests.
+public class EntityCacheVersions {
+    // Table (data version name) -> cached entity
+    private final Map<String, Class<?>> cachedEntities;
+
+    // Last version of the tables seen per session factory, each has its own cache
+    private final ConcurrentMap<SessionFactory, ConcurrentMap<String, Long>> versions = new ConcurrentHashMap<>();
+
+    public EntityCacheVersions(Map<String, Class<?>> cachedEntities) {
+        this.cachedEntities = cachedEntities;
+    }
+
+    // The versions were read through the session factory. Its cache is evicted the first time a table is seen as well,
+    // it may have been filled before.
+    public void check(SessionFactory sessionFactory, Map<String, Long> tableVersions) {
+        ConcurrentMap<String, Long> seenVersions = versions.computeIfAbsent(sessionFactory, factory -> new ConcurrentHashMap<>());
+        tableVersions.forEach((table, version) -> {
+            Class<?> entity = cachedEntities.get(table);
+            if (entity == null)
+                return;
+
+            Long seenVersion = seenVersions.get(table);
+            if (seenVersion == null || seenVersion < version) {
+                Cache cache = sessionFactory.getCache();
+                cache.evictEntityData(entity);
+                cache.evictQueryRegions();
+                seenVersions.merge(table, version, Math::max);
+            }
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseBroadcaster;
+import javax.ws.rs.sse.SseEventSink;
+
+// Pushes committed mutations as Server-Sent Events to every connected client (see EventResource). Subscription changes
+// are published from the database log (SubscriptionEventPoller), METRO config changes when this instance commits them.
+// The broadcaster is created when the first client connects, until then events are dropped. A single instance is
+// shared by all requests.
+public class EventPublisher implements Managed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventPublisher.class);
+
+    public static final String SUBSCRIPTIONS_CREATED = "subscriptions-created";
+    public static final String SUBSCRIPTIONS_DELETED = "subscriptions-deleted";
+    public static final String METRO_CONFIG_CREATED = "metroconfig-created";
+    public static final String METRO_CONFIG_DELETED = "metroconfig-deleted";
+
+    private volatile Sse sse;
+    private volatile SseBroadcaster broadcaster;
+
+    public synchronized void register(Sse sse, SseEventSink eventSink) {
+        if (broadcaster == null) {
+            SseBroadcaster sseBroadcaster = sse.newBroadcaster();
+            sseBroadcaster.onError((sink, throwable) -> {
+                LOGGER.info("Closing SSE connection: " + throwable.toString());
+                sink.close();
+            });
+            this.sse = sse;
+            this.broadcaster = sseBroadcaster;
+        }
+        broadcaster.register(eventSink);
+    }
+
+    public boolean hasClients() {
+        return broadcaster != null;
+    }
+
+    // The id (may be null) lets clients resume from the right version (e.g. with GET /subscriptions/{model}/changes).
+    public void publish(String name, String id, Object data) {
+        SseBroadcaster sseBroadcaster = broadcaster;
+        if (sseBroadcaster == null)
+            return;
+
+        OutboundSseEvent.Builder builder = sse.newEventBuilder()
+                .name(name)
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(data);
+        if (id != null)
+            builder.id(id);
+        sseBroadcaster.broadcast(builder.build());
+    }
+
+    @Override
+    public void start() {
+    }
+
+    // Closes the open connections on shutdown, otherwise Jetty waits for them until the shutdown timeout.
+    @Override
+    public synchronized void stop() {
+        if (broadcaster != null)
+            broadcaster.close();
+    }
+}
@@ -0,0 +1,47 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+// Writes the elements produced by a source as a JSON array directly to the response, one element at a time, so the
+// whole list is never held in memory and the first bytes are sent before the last row is read.
+// The output is always JSON (also when Smile is accepted), so responses set the JSON media type explicitly.
+public class JsonArrayStreamingOutput<T> implements StreamingOutput {
+    private final ObjectWriter writer;
+    private final Consumer<Consumer<T>> source;
+
+    public JsonArrayStreamingOutput(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        // Leave flushing to the container's output buffer instead of flushing after each element.
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.source = source;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        JsonGenerator generator = writer.getFactory().createGenerator(output);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        generator.writeStartArray();
+        try {
+            source.accept(element -> {
+                try {
+                    writer.writeValue(generator, element);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        generator.writeEndArray();
+        generator.close();
+    }
+}
@@ -0,0 +1,80 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.metro.MetroLocationDescription;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.dropwizard.util.Duration;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// Bounded cache of deserialized METRO configs, so they are not parsed from JSON on every request. Every config is cached
+// with the version of the METRO configs of its model it was read at (see DataVersionService). A config is served
+// without the database for the check interval after the version of its model was last read from the database, if it
+// was read at that version; a change through another instance or directly in the database is seen after at most the
+// interval. A single instance is shared by all requests. Cached objects are shared as well and must not be modified.
+public class MetroConfigCache {
+    private final Cache<ModelLocationKey, Versioned<MetroLocationDescription>> cache;
+    private final long checkIntervalNanos;
+    private final LongSupplier nanoClock;
+
+    // Last version of the METRO configs read from the database per model.
+    private final ConcurrentMap<String, Check> checks = new ConcurrentHashMap<>();
+
+    public MetroConfigCache(long maximumSize, Duration checkInterval) {
+        this(maximumSize, checkInterval, System::nanoTime);
+    }
+
+    MetroConfigCache(long maximumSize, Duration checkInterval, LongSupplier nanoClock) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.checkIntervalNanos = checkInterval.toNanoseconds();
+        this.nanoClock = nanoClock;
+    }
+
+    // The cached config if it can be served without the database.
+    public Optional<Versioned<MetroLocationDescription>> getChecked(ModelLocationKey key) {
+        Versioned<MetroLocationDescription> metroLocationDescription = cache.getIfPresent(key);
+        Check check = checks.get(key.getModelName());
+        if (metroLocationDescription == null || check == null || metroLocationDescription.getVersion() != check.version
+                || nanoClock.getAsLong() - check.checkedAt >= checkIntervalNanos)
+            return Optional.empty();
+        return Optional.of(metroLocationDescription);
+    }
+
+    // The version of the METRO configs of the model was read from the database: configs of the model cached at this
+    // version are served without the database for the check interval.
+    public void checked(String modelName, long version) {
+        Check check = new Check(version, nanoClock.getAsLong());
+        checks.merge(modelName, check, (current, next) -> next.version >= current.version ? next : current);
+    }
+
+    // Returns the cached config if it was read at the given (current) version of the METRO configs of its model or
+    // later, otherwise loads it (null if there is none). Runs atomically for the key, so an invalidation issued while a
+    // load is in progress waits for it and then removes the (possibly stale) result.
+    public Versioned<MetroLocationDescription> get(ModelLocationKey key, long version, Function<ModelLocationKey, Versioned<MetroLocationDescription>> loader) {
+        return cache.asMap().compute(key, (k, current) -> current != null && current.getVersion() >= version ? current : loader.apply(k));
+    }
+
+    // The config was changed by a local commit. The configs of its model are checked on their next request, since the
+    // change also changed the version of the model.
+    public void invalidate(ModelLocationKey key) {
+        checks.remove(key.getModelName());
+        cache.invalidate(key);
+    }
+
+    private static final class Check {
+        private final long version;
+        // System.nanoTime() of the check.
+        private final long checkedAt;
+
+        private Check(long version, long checkedAt) {
+            this.version = version;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package com.cgs.jt.rwis.metaservice.core;
 
 import com.cgs.jt.rwis.metaservice.core.mappers.MetroConfigMapper;
+import com.cgs.jt.rwis.metaservice.db.dao.InsertResult;
 import com.cgs.jt.rwis.metaservice.db.dao.LocationDAO;
 import com.cgs.jt.rwis.metaservice.db.dao.MetroConfigDAO;
 import com.cgs.jt.rwis.metaservice.db.entity.Location;
 import com.cgs.jt.rwis.metaservice.db.entity.MetroConfig;
 import com.cgs.jt.rwis.metaservice.db.entity.Model;
-import com.cgs.jt.rwis.metaservice.db.entity.Subscription;
 import com.cgs.jt.rwis.metro.MetroLocationDescription;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.mapstruct.factory.Mappers;
@@ -16,12 +16,16 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class MetroConfigService {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetroConfigService.class);
     private static MetroConfigMapper mapper = Mappers.getMapper(MetroConfigMapper.class);
+    private static final String COALESCER_NAME = "metroconfig";
 
     @Inject
     private MetroConfigDAO metroConfigDAO;
@@ -29,58 +33,120 @@ public class MetroConfigService {
     @Inject
     private LocationDAO locationDAO;
 
-    public MetroLocationDescription createMetroConfig(MetroLocationDescription metroLocationDescription) {
-        LOGGER.info("Creating MetroLocationDescription: " + metroLocationDescription.toString());
+    @Inject
+    private MetroConfigCache metroConfigCache;
 
-        try {
-            MetroConfig metroConfig = mapper.toMetroConfig(metroLocationDescription);
+    @Inject
+    private EventPublisher eventPublisher;
 
-            // We need to create (and persist) Location.
-            Location location = new Location();
-            location.setLatitude(metroConfig.getLocation().getLatitude());
-            location.setLongitude(metroConfig.getLocation().getLongitude());
-            locationDAO.create(location);
-            metroConfig.setLocation(location);
+    @Inject
+    private RequestCoalescer requestCoalescer;
 
-            MetroConfig createdMetroConfig = metroConfigDAO.create(metroConfig);
+    @Inject
+    private DatabaseExecutor databaseExecutor;
 
-            MetroLocationDescription createdMetroLocationDescription = mapper.toMetroLocationDescription(createdMetroConfig);
-            return createdMetroLocationDescription;
+    @Inject
+    private DataVersionService dataVersionService;
+
+    // Creating a METRO config for a model and location that already has one changes nothing (e.g. a retried request),
+    // the stored config is returned.
+    public CreateResult<MetroLocationDescription> createMetroConfig(MetroLocationDescription metroLocationDescription) {
+        LOGGER.info("Creating MetroLocationDescription: " + metroLocationDescription.toString());
+
+        MetroConfig metroConfig;
+        try {
+            metroConfig = mapper.toMetroConfig(metroLocationDescription);
         } catch (JsonProcessingException e) {
             throw new WebApplicationException("Error parsing JSON: " + e.toString(), Response.Status.INTERNAL_SERVER_ERROR);
         }
+
+        // The location is created too, if it does not exist yet.
+        InsertResult<MetroConfig> insertResult = metroConfigDAO.createIfNotExists(metroConfig);
+        if (!insertResult.getExisting().isEmpty())
+            return new CreateResult<>(parse(insertResult.getExisting().get(0)), false);
+
+        ModelLocationKey key = toModelLocationKey(metroConfig);
+        metroConfigDAO.afterCommit(() -> {
+            metroConfigCache.invalidate(key);
+            requestCoalescer.invalidate(COALESCER_NAME);
+            eventPublisher.publish(EventPublisher.METRO_CONFIG_CREATED, null, metroLocationDescription);
+        });
+
+        return new CreateResult<>(metroLocationDescription, true);
     }
 
     public List<MetroLocationDescription> getMetroConfigs() {
         LOGGER.info("Getting all metroConfigs.");
 
         List<MetroConfig> metroConfigList = metroConfigDAO.findAll();
-        List<MetroLocationDescription> metroLocationDescriptionList = mapper.toMetroLocationDescriptionList(metroConfigList);
+        List<MetroLocationDescription> metroLocationDescriptionList = toMetroLocationDescriptionList(metroConfigList);
 
         return metroLocationDescriptionList;
     }
 
-    public MetroLocationDescription getMetroConfigForModelAndLocation(String modelName, double latitude, double longitude) {
-        LOGGER.info("Getting metroConfig with latitude: " + latitude + " longitude: " + longitude + " model: " + modelName);
+    public Page<MetroLocationDescription> getMetroConfigs(String after, int limit) {
+        LOGGER.info("Getting " + limit + " metroConfigs after cursor: " + after);
 
-        Location location = new Location();
-        location.setLatitude(latitude);
-        location.setLongitude(longitude);
-        Model model = new Model();
-        model.setName(modelName);
+        List<MetroConfig> metroConfigList;
+        if (after == null) {
+            metroConfigList = metroConfigDAO.findPage(limit + 1);
+        } else {
+            PageCursor cursor = PageCursor.decode(after, 3);
+            metroConfigList = metroConfigDAO.findPageAfter(cursor.getString(0), cursor.getDouble(1), cursor.getDouble(2), limit + 1);
+        }
 
-        Optional<MetroConfig> mc = metroConfigDAO.find(new MetroConfig.MetroConfigId(location, model));
+        return PageCursor.page(metroConfigList, limit, this::toMetroLocationDescriptionList,
+                m -> PageCursor.encode(m.getModel().getName(), m.getLocation().getLatitude(), m.getLocation().getLongitude()));
+    }
 
-        if (mc.isPresent()) {
-            MetroConfig metroConfig = mc.get();
-            try {
-                MetroLocationDescription metroLocationDescription = mapper.toMetroLocationDescription(metroConfig);
-                return metroLocationDescription;
-            } catch (JsonProcessingException e) {
-                throw new WebApplicationException("Error parsing JSON: " + e.toString(), Response.Status.INTERNAL_SERVER_ERROR);
-            }
+    public void streamMetroConfigs(Consumer<MetroLocationDescription> consumer) {
+        LOGGER.info("Streaming all metroConfigs.");
+
+        metroConfigDAO.scrollAll(metroConfig -> consumer.accept(toMetroLocationDescription(metroConfig)));
+    }
+
+    // Streams all the metroConfigs of the model, optionally only those inside the bounding box (if not null).
+    public void streamMetroConfigsByModelName(String modelName, BoundingBox boundingBox, Consumer<MetroLocationDescription> consumer) {
+        LOGGER.info("Streaming metroConfigs for model: " + modelName + (boundingBox != null ? " within bbox: " + boundingBox : ""));
+
+        if (boundingBox == null) {
+            metroConfigDAO.scrollAllByModelName(modelName, metroConfig -> consumer.accept(toMetroLocationDescription(metroConfig)));
+        } else {
+            metroConfigDAO.scrollAllByModelNameWithin(modelName, boundingBox.getMinLatitude(), boundingBox.getMinLongitude(),
+                    boundingBox.getMaxLatitude(), boundingBox.getMaxLongitude(), metroConfig -> consumer.accept(toMetroLocationDescription(metroConfig)));
         }
-        throw new WebApplicationException("MetroConfig with latitude " + latitude + " and longitude " + longitude + " for model " + modelName + " not found", Response.Status.NOT_FOUND);
+    }
+
+    // Served from the METRO config cache, the primary database is only read on a cache miss or when the config is due
+    // to be checked: then the version of the METRO configs of the model is read and the config is only loaded again if
+    // it was cached at an older version. Missing configs are not cached, concurrent lookups share one query (and wait
+    // for it without taking a connection). Returned with the version it was read at.
+    public CompletableFuture<Versioned<MetroLocationDescription>> getMetroConfigForModelAndLocation(String modelName, double latitude, double longitude) {
+        ModelLocationKey modelLocationKey = new ModelLocationKey(modelName, latitude, longitude);
+        Optional<Versioned<MetroLocationDescription>> cachedMetroLocationDescription = metroConfigCache.getChecked(modelLocationKey);
+        if (cachedMetroLocationDescription.isPresent())
+            return CompletableFuture.completedFuture(cachedMetroLocationDescription.get());
+
+        return requestCoalescer.execute(COALESCER_NAME, modelLocationKey, () -> databaseExecutor.onPrimary(() -> {
+            LOGGER.info("Getting metroConfig with latitude: " + latitude + " longitude: " + longitude + " model: " + modelName);
+
+            Location location = new Location();
+            location.setLatitude(latitude);
+            location.setLongitude(longitude);
+            Model model = new Model();
+            model.setName(modelName);
+
+            long version = dataVersionService.getModelVersion(DataVersionService.METRO_CONFIGS, modelName);
+            metroConfigCache.checked(modelName, version);
+            Versioned<MetroLocationDescription> metroLocationDescription = metroConfigCache.get(modelLocationKey, version, key ->
+                    metroConfigDAO.find(new MetroConfig.MetroConfigId(location, model))
+                            .map(metroConfig -> new Versioned<>(parse(metroConfig), version))
+                            .orElse(null));
+            if (metroLocationDescription != null)
+                return metroLocationDescription;
+
+            throw new WebApplicationException("MetroConfig with latitude " + latitude + " and longitude " + longitude + " for model " + modelName + " not found", Response.Status.NOT_FOUND);
+        }));
     }
 
     /*public ModelDTO updateModel(String name, ModelDTO modelDTO) {
@@ -103,27 +169,22 @@ public class MetroConfigService {
     public MetroLocationDescription deleteMetroConfigForModelAndLocation(String modelName, double latitude, double longitude) {
         LOGGER.info("Deleting metroConfig with latitude: " + latitude + " longitude: " + longitude + " model: " + modelName);
 
-        Location location = new Location();
-        location.setLatitude(latitude);
-        location.setLongitude(longitude);
-        Model model = new Model();
-        model.setName(modelName);
-
-        Optional<MetroConfig> mc = metroConfigDAO.delete(new MetroConfig.MetroConfigId(location, model));
+        Optional<MetroConfig> mc = metroConfigDAO.delete(modelName, latitude, longitude);
 
         if (mc.isPresent()) {
             MetroConfig deletedMetroConfig = mc.get();
+            ModelLocationKey key = toModelLocationKey(deletedMetroConfig);
+            metroConfigDAO.afterCommit(() -> {
+                metroConfigCache.invalidate(key);
+                requestCoalescer.invalidate(COALESCER_NAME);
+            });
 
             // If location does not have any Subscription or MetroConfig, delete it.
-            List<Subscription> subscriptionList = deletedMetroConfig.getLocation().getSubscriptionList();
-            subscriptionList.remove(deletedMetroConfig);
-            List<MetroConfig> metroConfigList = deletedMetroConfig.getLocation().getMetroConfigList();
-            metroConfigList.remove(deletedMetroConfig);
-            if (subscriptionList.isEmpty() && metroConfigList.isEmpty())
-                locationDAO.delete(new Location.LocationId(deletedMetroConfig.getLocation().getLatitude(), deletedMetroConfig.getLocation().getLongitude()));
+            locationDAO.deleteIfUnused(latitude, longitude);
 
             try {
                 MetroLocationDescription metroLocationDescription = mapper.toMetroLocationDescription(deletedMetroConfig);
+                metroConfigDAO.afterCommit(() -> eventPublisher.publish(EventPublisher.METRO_CONFIG_DELETED, null, metroLocationDescription));
                 return metroLocationDescription;
             } catch (JsonProcessingException e) {
                 throw new WebApplicationException("Error parsing JSON: " + e.toString(), Response.Status.INTERNAL_SERVER_ERROR);
@@ -132,4 +193,30 @@ public class MetroConfigService {
 
         throw new WebApplicationException("MetroConfig with latitude " + latitude + " and longitude " + longitude + " for model " + modelName + " not found", Response.Status.NOT_FOUND);
     }
+
+    private static ModelLocationKey toModelLocationKey(MetroConfig metroConfig) {
+        return new ModelLocationKey(metroConfig.getModel().getName(), metroConfig.getLocation().getLatitude(), metroConfig.getLocation().getLongitude());
+    }
+
+    // Uses the cached object if it is checked. Rows read here are not put into the cache: they may have been read before
+    // a concurrent change was committed (and the cache invalidated).
+    private MetroLocationDescription toMetroLocationDescription(MetroConfig metroConfig) {
+        return metroConfigCache.getChecked(toModelLocationKey(metroConfig)).map(Versioned::getValue).orElseGet(() -> parse(metroConfig));
+    }
+
+    private List<MetroLocationDescription> toMetroLocationDescriptionList(List<MetroConfig> metroConfigList) {
+        List<MetroLocationDescription> metroLocationDescriptionList = new ArrayList<>(metroConfigList.size());
+        for (MetroConfig metroConfig : metroConfigList) {
+            metroLocationDescriptionList.add(toMetroLocationDescription(metroConfig));
+        }
+        return metroLocationDescriptionList;
+    }
+
+    private MetroLocationDescription parse(MetroConfig metroConfig) {
+        try {
+            return mapper.toMetroLocationDescription(metroConfig);
+        } catch (JsonProcessingException e) {
+            throw new WebApplicationException("Error parsing JSON: " + e.toString(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
 }
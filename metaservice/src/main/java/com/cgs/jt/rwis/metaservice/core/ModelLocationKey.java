@@ -0,0 +1,52 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import java.util.Objects;
+
+// (model name, latitude, longitude) key for in-memory lookups.
+public class ModelLocationKey {
+    private final String modelName;
+    private final double latitude;
+    private final double longitude;
+
+    public ModelLocationKey(String modelName, double latitude, double longitude) {
+        this.modelName = modelName;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ModelLocationKey that = (ModelLocationKey) o;
+        return Double.compare(that.latitude, latitude) == 0 &&
+                Double.compare(that.longitude, longitude) == 0 &&
+                modelName.equals(that.modelName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(modelName, latitude, longitude);
+    }
+
+    @Override
+    public String toString() {
+        return "ModelLocationKey{" +
+                "modelName='" + modelName + '\'' +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
+                '}';
+    }
+}
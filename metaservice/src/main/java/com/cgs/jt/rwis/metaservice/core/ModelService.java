@@ -40,6 +40,15 @@ public class ModelService {
         return modelDTOList;
     }
 
+    public Page<ModelDTO> getModels(String after, int limit) {
+        LOGGER.info("Getting " + limit + " models after cursor: " + after);
+
+        String afterName = after == null ? null : PageCursor.decode(after, 1).getString(0);
+        List<Model> modelList = dao.findPage(afterName, limit + 1);
+
+        return PageCursor.page(modelList, limit, mapper::toDtoList, m -> PageCursor.encode(m.getName()));
+    }
+
     public ModelDTO getModel(String name) {
         LOGGER.info("Getting model with name: " + name);
 
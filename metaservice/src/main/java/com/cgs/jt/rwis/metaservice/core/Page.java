@@ -0,0 +1,23 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import java.util.List;
+import java.util.Optional;
+
+// One page of a keyset-paginated collection. The next cursor is absent on the last page.
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public Optional<String> getNextCursor() {
+        return Optional.ofNullable(nextCursor);
+    }
+}
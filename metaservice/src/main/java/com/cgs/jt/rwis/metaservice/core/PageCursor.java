@@ -0,0 +1,74 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+// Opaque keyset pagination cursor: the primary key values of the last returned row, as a base64url encoded JSON array.
+public class PageCursor {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ArrayNode values;
+
+    private PageCursor(ArrayNode values) {
+        this.values = values;
+    }
+
+    public static String encode(Object... values) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(values);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (IOException e) {
+            throw new WebApplicationException("Error creating cursor: " + e.toString(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    public static PageCursor decode(String cursor, int size) {
+        try {
+            JsonNode node = objectMapper.readTree(Base64.getUrlDecoder().decode(cursor.getBytes(StandardCharsets.US_ASCII)));
+            if (node != null && node.isArray() && node.size() == size)
+                return new PageCursor((ArrayNode) node);
+        } catch (IllegalArgumentException | IOException e) {
+            // Reported below
+        }
+        throw new WebApplicationException("Invalid cursor " + cursor, Response.Status.BAD_REQUEST);
+    }
+
+    // Builds the page from rows fetched with limit + 1, the extra row only signals that there is a next page.
+    public static <E, T> Page<T> page(List<E> rows, int limit, Function<List<E>, List<T>> mapper, Function<E, String> cursor) {
+        if (rows.size() <= limit)
+            return new Page<>(mapper.apply(rows), null);
+
+        List<E> pageRows = rows.subList(0, limit);
+        return new Page<>(mapper.apply(pageRows), cursor.apply(pageRows.get(limit - 1)));
+    }
+
+    public String getString(int index) {
+        JsonNode node = values.get(index);
+        if (!node.isTextual())
+            throw new WebApplicationException("Invalid cursor", Response.Status.BAD_REQUEST);
+        return node.textValue();
+    }
+
+    public double getDouble(int index) {
+        JsonNode node = values.get(index);
+        if (!node.isNumber())
+            throw new WebApplicationException("Invalid cursor", Response.Status.BAD_REQUEST);
+        return node.doubleValue();
+    }
+
+    public int getInt(int index) {
+        JsonNode node = values.get(index);
+        if (!node.canConvertToInt() || !node.isIntegralNumber())
+            throw new WebApplicationException("Invalid cursor", Response.Status.BAD_REQUEST);
+        return node.intValue();
+    }
+}
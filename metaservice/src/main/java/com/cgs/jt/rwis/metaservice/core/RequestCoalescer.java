@@ -0,0 +1,64 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+// Lets concurrent identical reads share one database query ("single flight"): the first caller for a key starts the
+// work (e.g. submits it to the DatabaseExecutor), callers that arrive before it completes get the same future, so they
+// neither take a database connection nor a place in the executor queue. Nothing is kept once the work is done, so a
+// later caller always queries again. Results are shared and must not be modified, the futures must not be completed by
+// the callers. A single instance is shared by all requests.
+//
+// For every name the coalescer.<name>.executed meter counts the calls that ran the work and coalescer.<name>.coalesced
+// the calls that got the result of another one.
+public class RequestCoalescer {
+    private final ConcurrentMap<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final MetricRegistry metrics;
+
+    public RequestCoalescer(MetricRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String name, Object key, Supplier<CompletableFuture<T>> work) {
+        List<Object> flightKey = Arrays.asList(name, key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(flightKey, flight);
+        if (running != null) {
+            metrics.meter(MetricRegistry.name("coalescer", name, "coalesced")).mark();
+            return (CompletableFuture<T>) running;
+        }
+
+        metrics.meter(MetricRegistry.name("coalescer", name, "executed")).mark();
+        CompletableFuture<T> result;
+        try {
+            result = work.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(flightKey, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+
+        // Removed before the callers are completed, so callers that see the result never join this flight again.
+        result.whenComplete((value, throwable) -> {
+            inFlight.remove(flightKey, flight);
+            if (throwable != null)
+                flight.completeExceptionally(throwable);
+            else
+                flight.complete(value);
+        });
+        return (CompletableFuture<T>) flight;
+    }
+
+    // Later callers of the name start new work instead of joining the work in flight, which may have read the data before
+    // a commit (callers that already joined it still get its result).
+    public void invalidate(String name) {
+        inFlight.keySet().removeIf(flightKey -> name.equals(flightKey.get(0)));
+    }
+}
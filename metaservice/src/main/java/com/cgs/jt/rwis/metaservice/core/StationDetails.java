@@ -0,0 +1,55 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+// Nested collections returned with the stations: their measured parameters ("parameters") and the bases that can see
+// them ("visibility").
+public class StationDetails {
+    public static final StationDetails ALL = new StationDetails(true, true);
+
+    private final boolean parameters;
+    private final boolean visibility;
+
+    public StationDetails(boolean parameters, boolean visibility) {
+        this.parameters = parameters;
+        this.visibility = visibility;
+    }
+
+    // Parses the comma separated include parameter, e.g. "parameters,visibility". Without it everything is included;
+    // an empty one includes nothing.
+    public static StationDetails parse(String include) {
+        if (include == null)
+            return ALL;
+
+        boolean parameters = false;
+        boolean visibility = false;
+        for (String part : include.split(",")) {
+            switch (part.trim()) {
+                case "":
+                    break;
+                case "parameters":
+                    parameters = true;
+                    break;
+                case "visibility":
+                    visibility = true;
+                    break;
+                default:
+                    throw new WebApplicationException("Parameter include must be a list of parameters, visibility", Response.Status.BAD_REQUEST);
+            }
+        }
+        return new StationDetails(parameters, visibility);
+    }
+
+    public boolean isParameters() {
+        return parameters;
+    }
+
+    public boolean isVisibility() {
+        return visibility;
+    }
+
+    public boolean isNone() {
+        return !parameters && !visibility;
+    }
+}
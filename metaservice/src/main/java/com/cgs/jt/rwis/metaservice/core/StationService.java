@@ -11,8 +11,12 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public class StationService {
     private static final Logger LOGGER = LoggerFactory.getLogger(StationService.class);
@@ -31,15 +35,52 @@ public class StationService {
         return createdStationDTO;
     }
 
-    public List<StationDTO> getStations() {
+    // The included collections are batch fetched (Station.FETCH_BATCH_SIZE stations per query), the others are not
+    // loaded at all.
+    public List<StationDTO> getStations(StationDetails details) {
         LOGGER.info("Getting all stations.");
 
         List<Station> stationList = dao.findAll();
-        List<StationDTO> stationDTOList = mapper.toDtoList(stationList);
+        List<StationDTO> stationDTOList = toDtoList(stationList, details);
 
         return stationDTOList;
     }
 
+    public Page<StationDTO> getStations(String after, int limit, StationDetails details) {
+        LOGGER.info("Getting " + limit + " stations after cursor: " + after);
+
+        Integer afterId = after == null ? null : PageCursor.decode(after, 1).getInt(0);
+        List<Station> stationList = dao.findPage(afterId, limit + 1);
+
+        return PageCursor.page(stationList, limit, page -> toDtoList(page, details), s -> PageCursor.encode(s.getId()));
+    }
+
+    public void streamStations(StationDetails details, Consumer<StationDTO> consumer) {
+        LOGGER.info("Streaming all stations.");
+
+        if (details.isNone()) {
+            dao.scrollAll(station -> consumer.accept(mapper.toSummaryDto(station)));
+        } else {
+            dao.scrollAllInBatches(stationList -> stationList.forEach(station -> consumer.accept(toDto(station, details))));
+        }
+    }
+
+    // Stations within radius (in km) of the given point, nearest first.
+    public List<StationDTO> getStationsNear(double latitude, double longitude, double radiusKm) {
+        LOGGER.info("Getting stations within " + radiusKm + " km of latitude: " + latitude + ", longitude: " + longitude);
+
+        // The bounding box query uses the (latitude, longitude) index, the exact distance is checked afterwards.
+        BoundingBox boundingBox = BoundingBox.around(latitude, longitude, radiusKm);
+        List<Station> stationList = dao.findWithin(boundingBox.getMinLatitude(), boundingBox.getMinLongitude(), boundingBox.getMaxLatitude(), boundingBox.getMaxLongitude());
+
+        List<Station> nearStationList = stationList.stream()
+                .filter(s -> BoundingBox.distanceKm(latitude, longitude, s.getLatitude(), s.getLongitude()) <= radiusKm)
+                .sorted(Comparator.comparingDouble(s -> BoundingBox.distanceKm(latitude, longitude, s.getLatitude(), s.getLongitude())))
+                .collect(Collectors.toList());
+
+        return mapper.toDtoList(nearStationList);
+    }
+
     public StationDTO getStation(int id) {
         LOGGER.info("Getting station with ID: " + id);
 
@@ -80,5 +121,22 @@ public class StationService {
         }
         throw new WebApplicationException("Station with ID " + id + " not found", Response.Status.NOT_FOUND);
     }
+
+    private static StationDTO toDto(Station station, StationDetails details) {
+        StationDTO stationDTO = mapper.toSummaryDto(station);
+        if (details.isParameters())
+            stationDTO.setParameterOnStationSet(mapper.toParameterOnStationDtoSet(station.getParameterOnStationSet()));
+        if (details.isVisibility())
+            stationDTO.setBaseCanSeeStationSet(mapper.toBaseCanSeeStationDtoSet(station.getBaseCanSeeStationSet()));
+        return stationDTO;
+    }
+
+    private static List<StationDTO> toDtoList(List<Station> stationList, StationDetails details) {
+        List<StationDTO> stationDTOList = new ArrayList<>(stationList.size());
+        for (Station station : stationList) {
+            stationDTOList.add(toDto(station, details));
+        }
+        return stationDTOList;
+    }
 }
 
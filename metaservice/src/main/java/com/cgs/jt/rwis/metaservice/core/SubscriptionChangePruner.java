@@ -0,0 +1,52 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.metaservice.db.dao.SubscriptionChangeDAO;
+import io.dropwizard.util.Duration;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.context.internal.ManagedSessionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Deletes the subscription changes older than the retention, run periodically on the primary database in its own unit
+// of work. Every instance of the service runs it, pruning the same changes twice is harmless.
+public class SubscriptionChangePruner implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionChangePruner.class);
+
+    private final SessionFactory sessionFactory;
+    private final SubscriptionChangeDAO subscriptionChangeDAO;
+    private final Duration retention;
+
+    public SubscriptionChangePruner(SessionFactory sessionFactory, SubscriptionChangeDAO subscriptionChangeDAO, Duration retention) {
+        this.sessionFactory = sessionFactory;
+        this.subscriptionChangeDAO = subscriptionChangeDAO;
+        this.retention = retention;
+    }
+
+    // Never throws, a scheduled task that throws is not run again.
+    @Override
+    public void run() {
+        Session session = sessionFactory.openSession();
+        try {
+            ManagedSessionContext.bind(session);
+
+            Transaction transaction = session.beginTransaction();
+            try {
+                int prunedModels = subscriptionChangeDAO.prune(retention.toMilliseconds());
+                transaction.commit();
+                if (prunedModels > 0)
+                    LOGGER.info("Pruned subscription changes older than " + retention + " of " + prunedModels + " models.");
+            } catch (RuntimeException e) {
+                if (transaction.isActive())
+                    transaction.rollback();
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Error pruning subscription changes", e);
+        } finally {
+            ManagedSessionContext.unbind(sessionFactory);
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.api.ParameterForecastSubscription;
+import com.cgs.jt.rwis.metaservice.core.mappers.SubscriptionMapper;
+import com.cgs.jt.rwis.metaservice.db.dao.DataVersionDAO;
+import com.cgs.jt.rwis.metaservice.db.dao.SubscriptionChangeDAO;
+import com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.context.internal.ManagedSessionContext;
+import org.mapstruct.factory.Mappers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Publishes the subscription changes logged in the subscription_change table as Server-Sent Events (see
+// EventPublisher), so the events cover the changes of every instance of the service and the changes made directly in
+// the database. Run periodically on the primary database in its own unit of work: every run publishes the changes of
+// the versions committed since the previous run, per version first the deleted and then the created subscriptions,
+// with the version as event id. Writes to the subscriptions are serialized by their version row (see migrations.xml),
+// so every version up to the one read has committed.
+public class SubscriptionEventPoller implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionEventPoller.class);
+    private static SubscriptionMapper mapper = Mappers.getMapper(SubscriptionMapper.class);
+
+    private final SessionFactory sessionFactory;
+    private final DataVersionDAO dataVersionDAO;
+    private final SubscriptionChangeDAO subscriptionChangeDAO;
+    private final EventPublisher eventPublisher;
+
+    // Version of the subscriptions up to which the changes were published, -1 before the first run (which publishes
+    // nothing). Only used by the thread that runs the poller.
+    private long publishedVersion = -1;
+
+    public SubscriptionEventPoller(SessionFactory sessionFactory, DataVersionDAO dataVersionDAO, SubscriptionChangeDAO subscriptionChangeDAO, EventPublisher eventPublisher) {
+        this.sessionFactory = sessionFactory;
+        this.dataVersionDAO = dataVersionDAO;
+        this.subscriptionChangeDAO = subscriptionChangeDAO;
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Never throws, a scheduled task that throws is not run again. Changes that failed to be read are published by the
+    // next run.
+    @Override
+    public void run() {
+        Session session = sessionFactory.openSession();
+        try {
+            session.setDefaultReadOnly(true);
+            ManagedSessionContext.bind(session);
+
+            Transaction transaction = session.beginTransaction();
+            try {
+                poll();
+                transaction.commit();
+            } catch (RuntimeException e) {
+                if (transaction.isActive())
+                    transaction.rollback();
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Error publishing subscription changes", e);
+        } finally {
+            ManagedSessionContext.unbind(sessionFactory);
+            session.close();
+        }
+    }
+
+    private void poll() {
+        long version = dataVersionDAO.findVersions(Collections.singletonList(DataVersionService.SUBSCRIPTIONS))
+                .getOrDefault(DataVersionService.SUBSCRIPTIONS, 0L);
+        // Without clients the changes are skipped, not read.
+        if (publishedVersion >= 0 && version > publishedVersion && eventPublisher.hasClients())
+            publish(subscriptionChangeDAO.findAllBetween(publishedVersion, version));
+        publishedVersion = version;
+    }
+
+    // The changes are in the order they were made.
+    private void publish(List<SubscriptionChange> subscriptionChangeList) {
+        int start = 0;
+        while (start < subscriptionChangeList.size()) {
+            long version = subscriptionChangeList.get(start).getVersion();
+            List<ParameterForecastSubscription> deleted = new ArrayList<>();
+            List<ParameterForecastSubscription> created = new ArrayList<>();
+            int end = start;
+            for (; end < subscriptionChangeList.size() && subscriptionChangeList.get(end).getVersion() == version; end++) {
+                SubscriptionChange subscriptionChange = subscriptionChangeList.get(end);
+                if (SubscriptionChange.DELETED.equals(subscriptionChange.getType()))
+                    deleted.add(mapper.toParameterForecastSubscription(subscriptionChange));
+                else
+                    created.add(mapper.toParameterForecastSubscription(subscriptionChange));
+            }
+
+            if (!deleted.isEmpty())
+                eventPublisher.publish(EventPublisher.SUBSCRIPTIONS_DELETED, String.valueOf(version), deleted);
+            if (!created.isEmpty())
+                eventPublisher.publish(EventPublisher.SUBSCRIPTIONS_CREATED, String.valueOf(version), created);
+            start = end;
+        }
+    }
+}
@@ -2,8 +2,12 @@ package com.cgs.jt.rwis.metaservice.core;
 
 import com.cgs.jt.rwis.api.EarthSurfacePoint;
 import com.cgs.jt.rwis.api.ParameterForecastSubscription;
+import com.cgs.jt.rwis.metaservice.api.SubscriptionChangesDTO;
 import com.cgs.jt.rwis.metaservice.core.mappers.SubscriptionMapper;
+import com.cgs.jt.rwis.metaservice.db.dao.InsertResult;
 import com.cgs.jt.rwis.metaservice.db.dao.LocationDAO;
+import com.cgs.jt.rwis.metaservice.db.dao.ModelDAO;
+import com.cgs.jt.rwis.metaservice.db.dao.SubscriptionChangeDAO;
 import com.cgs.jt.rwis.metaservice.db.dao.SubscriptionDAO;
 import com.cgs.jt.rwis.metaservice.db.entity.*;
 import org.mapstruct.factory.Mappers;
@@ -15,10 +19,15 @@ import javax.inject.Inject;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public class SubscriptionService {
     private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionService.class);
     private static SubscriptionMapper mapper = Mappers.getMapper(SubscriptionMapper.class);
+    private static final String WITHIN_COALESCER_NAME = "subscriptions-within";
+    private static final String LOCATION_COALESCER_NAME = "subscriptions-location";
 
     @Inject
     private SubscriptionDAO subscriptionDAO;
@@ -26,25 +35,69 @@ public class SubscriptionService {
     @Inject
     private LocationDAO locationDAO;
 
-    public ParameterForecastSubscription createSubscription(ParameterForecastSubscription parameterForecastSubscription) {
+    @Inject
+    private ModelDAO modelDAO;
+
+    @Inject
+    private SubscriptionSnapshotCache snapshotCache;
+
+    @Inject
+    private SubscriptionChangeDAO subscriptionChangeDAO;
+
+    @Inject
+    private RequestCoalescer requestCoalescer;
+
+    @Inject
+    private DatabaseExecutor databaseExecutor;
+
+    @Inject
+    private DataVersionService dataVersionService;
+
+    // Creating a subscription that already exists changes nothing (e.g. a retried request), the stored subscription is
+    // returned (its elevation may differ from the given one).
+    public CreateResult<ParameterForecastSubscription> createSubscription(ParameterForecastSubscription parameterForecastSubscription) {
         LOGGER.info("Creating subscription: " + parameterForecastSubscription.toString());
 
         Subscription subscription = mapper.toSubscription(parameterForecastSubscription);
 
-        // We need to create (and persist) Location.
-        Location location = new Location();
-        location.setLatitude(subscription.getLocation().getLatitude());
-        location.setLongitude(subscription.getLocation().getLongitude());
-        locationDAO.create(location);
-        subscription.setLocation(location);
+        // The location is created too, if it does not exist yet.
+        InsertResult<Subscription> insertResult = subscriptionDAO.createIfNotExists(Collections.singletonList(subscription));
+        if (!insertResult.getExisting().isEmpty())
+            return new CreateResult<>(mapper.toParameterForecastSubscription(insertResult.getExisting().get(0)), false);
+
+        List<Subscription> createdSubscriptionList = insertResult.getInserted();
+        ParameterForecastSubscription subscriptionJernejAnswer = mapper.toParameterForecastSubscription(subscription);
 
-        Subscription createdSubscription = subscriptionDAO.create(subscription);
-        ParameterForecastSubscription subscriptionJernejAnswer = mapper.toParameterForecastSubscription(createdSubscription);
+        subscriptionDAO.afterCommit(() -> invalidate(createdSubscriptionList, Collections.emptyList()));
 
-        return subscriptionJernejAnswer;
+        return new CreateResult<>(subscriptionJernejAnswer, true);
     }
 
 
+    public List<ParameterForecastSubscription> createSubscriptions(List<ParameterForecastSubscription> parameterForecastSubscriptionList) {
+        LOGGER.info("Creating " + parameterForecastSubscriptionList.size() + " subscriptions.");
+
+        // Drop duplicated subscriptions.
+        Map<List<Object>, Subscription> subscriptions = new LinkedHashMap<>();
+        for (ParameterForecastSubscription parameterForecastSubscription : parameterForecastSubscriptionList) {
+            Subscription subscription = mapper.toSubscription(parameterForecastSubscription);
+            Location location = subscription.getLocation();
+
+            subscriptions.putIfAbsent(Arrays.asList(subscription.getModel().getName(), location.getLatitude(), location.getLongitude(),
+                    subscription.getForecastedParameter().getName(), subscription.getCustomerId()), subscription);
+        }
+
+        // Subscriptions that already exist are skipped (e.g. a retried request), only the new ones are returned.
+        List<Subscription> createdSubscriptionList = subscriptionDAO.createIfNotExists(subscriptions.values()).getInserted();
+        List<ParameterForecastSubscription> parameterForecastSubscriptions = mapper.toParameterForecastSubscriptionList(createdSubscriptionList);
+        if (createdSubscriptionList.isEmpty())
+            return parameterForecastSubscriptions;
+
+        subscriptionDAO.afterCommit(() -> invalidate(createdSubscriptionList, Collections.emptyList()));
+
+        return parameterForecastSubscriptions;
+    }
+
     public List<ParameterForecastSubscription> getSubscriptions() {
         LOGGER.info("Getting all subscriptions.");
 
@@ -54,35 +107,134 @@ public class SubscriptionService {
         return parameterForecastSubscriptionList;
     }
 
-    public HashMap<EarthSurfacePoint, HashMap<String, HashSet<String>>> getSubscriptionsByModelName(String modelName) {
-        LOGGER.info("Getting subscriptions for model name: " + modelName);
+    public Page<ParameterForecastSubscription> getSubscriptions(String after, int limit) {
+        LOGGER.info("Getting " + limit + " subscriptions after cursor: " + after);
 
-        List<Subscription> subscriptionList = subscriptionDAO.findAllByModelName(modelName);
+        List<Subscription> subscriptionList;
+        if (after == null) {
+            subscriptionList = subscriptionDAO.findPage(limit + 1);
+        } else {
+            PageCursor cursor = PageCursor.decode(after, 5);
+            subscriptionList = subscriptionDAO.findPageAfter(cursor.getString(0), cursor.getDouble(1), cursor.getDouble(2),
+                    cursor.getString(3), cursor.getString(4), limit + 1);
+        }
 
-        // Custom mapping - grouping by location
-        HashMap<EarthSurfacePoint, HashMap<String, HashSet<String>>> customMap = new HashMap<>();
-        for (Subscription s : subscriptionList) {
-            EarthSurfacePoint earthSurfacePointDTO = mapper.toEarthSurfacePoint(s);
+        return PageCursor.page(subscriptionList, limit, mapper::toParameterForecastSubscriptionList,
+                s -> PageCursor.encode(s.getModel().getName(), s.getLocation().getLatitude(), s.getLocation().getLongitude(),
+                        s.getForecastedParameter().getName(), s.getCustomerId()));
+    }
 
-            if (!customMap.containsKey(earthSurfacePointDTO)) {
-                customMap.put(earthSurfacePointDTO, new HashMap<>());
-            }
-            if (!customMap.get(earthSurfacePointDTO).containsKey(s.getForecastedParameter().getName())) {
-                customMap.get(earthSurfacePointDTO).put(s.getForecastedParameter().getName(), new HashSet<>());
+    public void streamSubscriptions(Consumer<ParameterForecastSubscription> consumer) {
+        LOGGER.info("Streaming all subscriptions.");
+
+        subscriptionDAO.scrollAll(subscription -> consumer.accept(mapper.toParameterForecastSubscription(subscription)));
+    }
+
+    // Served from the in-memory snapshot. The database is only used when the snapshot is missing or due to be checked:
+    // an unchanged snapshot is kept, a changed one is brought up to date with the logged changes (or loaded again when
+    // they were pruned). When a model run finishes, all the workers of the model ask for it at once: only one of them
+    // uses the database, the others wait for it without taking a database connection. Callers that arrive after a local
+    // change do not join a read that started before it.
+    public CompletableFuture<Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>>> getSubscriptionsByModelName(String modelName) {
+        Optional<Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>>> snapshot = snapshotCache.getChecked(modelName);
+        if (snapshot.isPresent())
+            return CompletableFuture.completedFuture(snapshot.get());
+
+        // Read the generation before querying, so a mutation committed during the query discards the result.
+        long generation = snapshotCache.generation(modelName);
+        return requestCoalescer.execute("subscriptions-snapshot", Arrays.asList(modelName, generation),
+                () -> databaseExecutor.onPrimary(() -> refreshSnapshot(modelName, generation)));
+    }
+
+    private Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> refreshSnapshot(String modelName, long generation) {
+        // Requests for models that do not exist must not fill the cache.
+        if (!modelDAO.exists(modelName)) {
+            snapshotCache.remove(modelName);
+            throw new WebApplicationException("Model " + modelName + " not found", Response.Status.NOT_FOUND);
+        }
+
+        long version = dataVersionService.getModelVersion(DataVersionService.SUBSCRIPTIONS, modelName);
+        Optional<Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>>> snapshot = snapshotCache.get(modelName);
+        if (snapshot.isPresent()) {
+            long snapshotVersion = snapshot.get().getVersion();
+            if (snapshotVersion == version)
+                return snapshotCache.checked(modelName, generation, snapshot.get());
+
+            if (snapshotVersion < version) {
+                List<SubscriptionChange> subscriptionChangeList = subscriptionChangeDAO.findAllByModelNameBetween(modelName, snapshotVersion, version);
+                // Read after the changes, like getSubscriptionChanges().
+                if (snapshotVersion >= dataVersionService.getSubscriptionChangesPrunedVersion(modelName)) {
+                    LOGGER.info("Applying " + subscriptionChangeList.size() + " subscription changes to the snapshot for model name: " + modelName);
+                    return snapshotCache.apply(modelName, generation, snapshot.get(), subscriptionChangeList, version);
+                }
             }
-            customMap.get(earthSurfacePointDTO).get(s.getForecastedParameter().getName()).add(s.getCustomerId());
         }
 
-        return customMap;
+        LOGGER.info("Loading subscriptions snapshot for model name: " + modelName);
+
+        List<Subscription> subscriptionList = subscriptionDAO.findAllByModelName(modelName);
+
+        return snapshotCache.install(modelName, generation, version, subscriptionList);
     }
 
-    public List<ParameterForecastSubscription> getSubscriptionsByModelNameAndLocation(String modelName, Double latitude, Double longitude) {
-        LOGGER.info("Getting subscriptions for model name: " + modelName + " and latitude: " + latitude + ", longitude: " + longitude);
+    // Version of the subscriptions of all the models, the changes are logged with it.
+    public long getSubscriptionsVersion() {
+        return dataVersionService.getTableVersion(DataVersionService.SUBSCRIPTIONS);
+    }
 
-        List<Subscription> subscriptionList = subscriptionDAO.findAllByModelNameAndLocation(modelName, latitude, longitude);
-        List<ParameterForecastSubscription> parameterForecastSubscriptionList = mapper.toParameterForecastSubscriptionList(subscriptionList);
+    // Changes of the subscriptions of the model after since, up to the given (current) version of the subscriptions.
+    // Fails with 410 Gone if some of them are no longer logged or since is not a version of this database.
+    public SubscriptionChangesDTO getSubscriptionChanges(String modelName, long since, long version) {
+        LOGGER.info("Getting subscription changes for model name: " + modelName + " since version: " + since);
 
-        return parameterForecastSubscriptionList;
+        if (since > version)
+            throw changesGone(modelName, since);
+
+        List<SubscriptionChange> subscriptionChangeList = subscriptionChangeDAO.findAllByModelNameBetween(modelName, since, version);
+        // Read after the changes: changes pruned after they were read are still complete, pruned before they are
+        // reported here.
+        if (since < dataVersionService.getSubscriptionChangesPrunedVersion(modelName))
+            throw changesGone(modelName, since);
+
+        return new SubscriptionChangesDTO(version, mapper.toSubscriptionChangeDTOList(subscriptionChangeList));
+    }
+
+    private static WebApplicationException changesGone(String modelName, long since) {
+        return new WebApplicationException("Changes since version " + since + " are not available for model " + modelName +
+                ", reload all the subscriptions of the model", Response.Status.GONE);
+    }
+
+    // Read from the replica database, with the version of the subscriptions of the model. Concurrent identical requests
+    // share one query.
+    public CompletableFuture<Versioned<List<ParameterForecastSubscription>>> getSubscriptionsByModelNameWithin(String modelName, BoundingBox boundingBox) {
+        List<Object> key = Arrays.asList(modelName, boundingBox.getMinLatitude(), boundingBox.getMinLongitude(),
+                boundingBox.getMaxLatitude(), boundingBox.getMaxLongitude());
+        return requestCoalescer.execute(WITHIN_COALESCER_NAME, key, () -> databaseExecutor.onReplica(() -> {
+            LOGGER.info("Getting subscriptions for model name: " + modelName + " within bbox: " + boundingBox);
+
+            long version = dataVersionService.getModelVersion(DataVersionService.SUBSCRIPTIONS, modelName);
+
+            List<Subscription> subscriptionList = subscriptionDAO.findAllByModelNameWithin(modelName, boundingBox.getMinLatitude(), boundingBox.getMinLongitude(),
+                    boundingBox.getMaxLatitude(), boundingBox.getMaxLongitude());
+            List<ParameterForecastSubscription> parameterForecastSubscriptionList = mapper.toParameterForecastSubscriptionList(subscriptionList);
+
+            return new Versioned<>(Collections.unmodifiableList(parameterForecastSubscriptionList), version);
+        }));
+    }
+
+    // Read from the replica database, with the version of the subscriptions of the model. Concurrent identical requests
+    // share one query.
+    public CompletableFuture<Versioned<List<ParameterForecastSubscription>>> getSubscriptionsByModelNameAndLocation(String modelName, Double latitude, Double longitude) {
+        return requestCoalescer.execute(LOCATION_COALESCER_NAME, new ModelLocationKey(modelName, latitude, longitude), () -> databaseExecutor.onReplica(() -> {
+            LOGGER.info("Getting subscriptions for model name: " + modelName + " and latitude: " + latitude + ", longitude: " + longitude);
+
+            long version = dataVersionService.getModelVersion(DataVersionService.SUBSCRIPTIONS, modelName);
+
+            List<Subscription> subscriptionList = subscriptionDAO.findAllByModelNameAndLocation(modelName, latitude, longitude);
+            List<ParameterForecastSubscription> parameterForecastSubscriptionList = mapper.toParameterForecastSubscriptionList(subscriptionList);
+
+            return new Versioned<>(Collections.unmodifiableList(parameterForecastSubscriptionList), version);
+        }));
     }
 
     /*public SubscriptionDTO updateSubscription(int id, SubscriptionDTO subscriptionDTO) {
@@ -104,32 +256,101 @@ public class SubscriptionService {
         LOGGER.info("Deleting subscription for model: " + modelName + " latitude: " + latitude + " longitude: " + longitude +
                 " customer: " + customer + " forecasted parameter: " + parameterName);
 
-        Location location = new Location();
-        location.setLatitude(latitude);
-        location.setLongitude(longitude);
-        Model model = new Model();
-        model.setName(modelName);
-        ForecastedParameter parameter = new ForecastedParameter();
-        parameter.setName(parameterName);
-
-        Optional<Subscription> s = subscriptionDAO.delete(new Subscription.SubscriptionId(location, model, parameter, customer));
+        Optional<Subscription> s = subscriptionDAO.delete(modelName, latitude, longitude, parameterName, customer);
 
         if (s.isPresent()) {
             Subscription deletedSubscription = s.get();
+            ParameterForecastSubscription deletedParameterForecastSubscription = mapper.toParameterForecastSubscription(deletedSubscription);
+            subscriptionDAO.afterCommit(() -> invalidate(Collections.emptyList(), Collections.singletonList(deletedSubscription)));
 
             // If location does not have any Subscription or MetroConfig, delete it.
-            List<Subscription> subscriptionList = deletedSubscription.getLocation().getSubscriptionList();
-            subscriptionList.remove(deletedSubscription);
-            List<MetroConfig> metroConfigList = deletedSubscription.getLocation().getMetroConfigList();
-            metroConfigList.remove(deletedSubscription);
-            if (subscriptionList.isEmpty() && metroConfigList.isEmpty())
-                locationDAO.delete(new Location.LocationId(deletedSubscription.getLocation().getLatitude(), deletedSubscription.getLocation().getLongitude()));
+            locationDAO.deleteIfUnused(latitude, longitude);
 
-            ParameterForecastSubscription deletedParameterForecastSubscription = mapper.toParameterForecastSubscription(deletedSubscription);
             return deletedParameterForecastSubscription;
         }
         throw new WebApplicationException("Subscription for model: " + modelName + " latitude: " + latitude + " longitude: " + longitude +
                 " customer: " + customer + " forecasted parameter: " + parameterName + " not found", Response.Status.NOT_FOUND);
     }
+
+    // Makes the given subscriptions the only subscriptions of the customer: missing ones are created, the others are
+    // deleted and those with a different elevation are replaced. Returns the subscriptions of the customer.
+    public List<ParameterForecastSubscription> replaceCustomerSubscriptions(String customerId, List<ParameterForecastSubscription> parameterForecastSubscriptionList) {
+        LOGGER.info("Replacing subscriptions of customer: " + customerId + " with " + parameterForecastSubscriptionList.size() + " subscriptions.");
+
+        // Drop duplicated subscriptions.
+        Map<List<Object>, Subscription> subscriptions = new LinkedHashMap<>();
+        for (ParameterForecastSubscription parameterForecastSubscription : parameterForecastSubscriptionList) {
+            if (!customerId.equals(parameterForecastSubscription.getCustomerId()))
+                throw new WebApplicationException("Subscription " + parameterForecastSubscription + " is not a subscription of customer " + customerId, Response.Status.BAD_REQUEST);
+
+            Subscription subscription = mapper.toSubscription(parameterForecastSubscription);
+            subscriptions.putIfAbsent(customerSubscriptionKey(subscription), subscription);
+        }
+
+        // Diff against the current subscriptions of the customer. Concurrent replaces (and deletes) of the same customer
+        // wait for this transaction, otherwise both would diff against the same subscriptions.
+        subscriptionDAO.lockCustomer(customerId);
+        Map<List<Object>, Subscription> missingSubscriptions = new LinkedHashMap<>(subscriptions);
+        List<Subscription> unwantedSubscriptionList = new ArrayList<>();
+        for (Subscription currentSubscription : subscriptionDAO.findAllByCustomerId(customerId)) {
+            List<Object> key = customerSubscriptionKey(currentSubscription);
+            Subscription subscription = subscriptions.get(key);
+            if (subscription != null && Double.compare(subscription.getElevation(), currentSubscription.getElevation()) == 0)
+                missingSubscriptions.remove(key);
+            else
+                unwantedSubscriptionList.add(currentSubscription);
+        }
+
+        // Deletes first, so a subscription with a new elevation can be inserted again.
+        List<Subscription> deletedSubscriptionList = unwantedSubscriptionList.isEmpty() ? Collections.emptyList() :
+                subscriptionDAO.deleteAll(customerId, unwantedSubscriptionList);
+        List<Subscription> createdSubscriptionList = missingSubscriptions.isEmpty() ? Collections.emptyList() :
+                subscriptionDAO.createIfNotExists(missingSubscriptions.values()).getInserted();
+        deleteUnusedLocations(deletedSubscriptionList);
+        invalidateAfterCommit(createdSubscriptionList, deletedSubscriptionList);
+
+        return mapper.toParameterForecastSubscriptionList(new ArrayList<>(subscriptions.values()));
+    }
+
+    // Returns the deleted subscriptions.
+    public List<ParameterForecastSubscription> deleteCustomerSubscriptions(String customerId) {
+        LOGGER.info("Deleting subscriptions of customer: " + customerId);
+
+        subscriptionDAO.lockCustomer(customerId);
+        List<Subscription> deletedSubscriptionList = subscriptionDAO.deleteAllByCustomerId(customerId);
+        deleteUnusedLocations(deletedSubscriptionList);
+        invalidateAfterCommit(Collections.emptyList(), deletedSubscriptionList);
+
+        return mapper.toParameterForecastSubscriptionList(deletedSubscriptionList);
+    }
+
+    // Identifies a subscription among the subscriptions of one customer.
+    private static List<Object> customerSubscriptionKey(Subscription subscription) {
+        return Arrays.asList(subscription.getModel().getName(), subscription.getLocation().getLatitude(), subscription.getLocation().getLongitude(),
+                subscription.getForecastedParameter().getName());
+    }
+
+    // Locations of the deleted subscriptions that no subscription or MetroConfig uses anymore are deleted too.
+    private void deleteUnusedLocations(List<Subscription> deletedSubscriptionList) {
+        if (!deletedSubscriptionList.isEmpty())
+            locationDAO.deleteAllIfUnused(deletedSubscriptionList.stream().map(Subscription::getLocation).collect(Collectors.toList()));
+    }
+
+    // Loaded snapshots and reads in flight may not contain the committed mutations.
+    private void invalidate(Collection<Subscription> createdSubscriptions, Collection<Subscription> deletedSubscriptions) {
+        Set<String> modelNames = new HashSet<>();
+        createdSubscriptions.forEach(s -> modelNames.add(s.getModel().getName()));
+        deletedSubscriptions.forEach(s -> modelNames.add(s.getModel().getName()));
+        snapshotCache.markChanged(modelNames);
+        requestCoalescer.invalidate(WITHIN_COALESCER_NAME);
+        requestCoalescer.invalidate(LOCATION_COALESCER_NAME);
+    }
+
+    private void invalidateAfterCommit(List<Subscription> createdSubscriptionList, List<Subscription> deletedSubscriptionList) {
+        if (createdSubscriptionList.isEmpty() && deletedSubscriptionList.isEmpty())
+            return;
+
+        subscriptionDAO.afterCommit(() -> invalidate(createdSubscriptionList, deletedSubscriptionList));
+    }
 }
 
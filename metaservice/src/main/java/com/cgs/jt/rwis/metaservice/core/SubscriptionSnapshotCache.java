@@ -0,0 +1,184 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.api.EarthSurfacePoint;
+import com.cgs.jt.rwis.api.GeographicLocation;
+import com.cgs.jt.rwis.metaservice.core.mappers.SubscriptionMapper;
+import com.cgs.jt.rwis.metaservice.db.entity.Subscription;
+import com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange;
+import io.dropwizard.util.Duration;
+import org.mapstruct.factory.Mappers;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+// Holds an immutable "location -> forecasted parameter -> customers" snapshot per model, together with the version of
+// the subscriptions of the model it contains (see DataVersionService). Snapshots are built from the database and
+// brought up to date (copy-on-write) with the logged changes, so readers never need a Hibernate session. A snapshot is
+// served without the database for the check interval after its version was last compared with the database, or until
+// a local commit changes the subscriptions of its model. Only models that exist are cached (see SubscriptionService).
+// A single instance is shared by all requests.
+public class SubscriptionSnapshotCache {
+    private static SubscriptionMapper mapper = Mappers.getMapper(SubscriptionMapper.class);
+
+    private final long checkIntervalNanos;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentMap<String, Entry> snapshots = new ConcurrentHashMap<>();
+
+    // Number of local changes and removals per model. A snapshot loaded, checked or updated from the database is only
+    // stored if neither happened meanwhile, otherwise it could miss a change that caused them.
+    private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+
+    public SubscriptionSnapshotCache(Duration checkInterval) {
+        this(checkInterval, System::nanoTime);
+    }
+
+    SubscriptionSnapshotCache(Duration checkInterval, LongSupplier nanoClock) {
+        this.checkIntervalNanos = checkInterval.toNanoseconds();
+        this.nanoClock = nanoClock;
+    }
+
+    // The snapshot of the model, also one that is due to be checked.
+    public Optional<Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>>> get(String modelName) {
+        Entry entry = snapshots.get(modelName);
+        return entry != null ? Optional.of(entry.snapshot) : Optional.empty();
+    }
+
+    // The snapshot of the model if it can be served without checking it.
+    public Optional<Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>>> getChecked(String modelName) {
+        Entry entry = snapshots.get(modelName);
+        if (entry == null || !entry.checked || nanoClock.getAsLong() - entry.checkedAt >= checkIntervalNanos)
+            return Optional.empty();
+        return Optional.of(entry.snapshot);
+    }
+
+    public long generation(String modelName) {
+        return generations.getOrDefault(modelName, 0L);
+    }
+
+    // Stores the snapshot loaded from the database, unless the generation changed or a newer snapshot is stored.
+    public Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> install(String modelName, long generation, long version, List<Subscription> subscriptionList) {
+        Map<EarthSurfacePoint, Map<String, Set<String>>> snapshot = new HashMap<>();
+        for (Subscription s : subscriptionList) {
+            add(snapshot, mapper.toEarthSurfacePoint(s), s.getForecastedParameter().getName(), s.getCustomerId());
+        }
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> frozenSnapshot = new Versioned<>(freeze(snapshot), version);
+
+        snapshots.compute(modelName, (name, current) ->
+                generation(name) == generation && (current == null || current.snapshot.getVersion() <= version) ? checked(frozenSnapshot) : current);
+        return frozenSnapshot;
+    }
+
+    // The version of the snapshot is still the version in the database: it is served without checking it again for the
+    // check interval.
+    public Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> checked(String modelName, long generation, Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> snapshot) {
+        snapshots.computeIfPresent(modelName, (name, current) ->
+                generation(name) == generation && current.snapshot == snapshot ? checked(snapshot) : current);
+        return snapshot;
+    }
+
+    // Applies the logged changes of the model (in the order they were made) to the snapshot, which then contains the
+    // given version, and stores the result like checked().
+    public Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> apply(String modelName, long generation, Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> snapshot,
+                                                                             List<SubscriptionChange> changes, long version) {
+        // Copy only the outer map and the locations that are touched, untouched locations are shared.
+        Map<EarthSurfacePoint, Map<String, Set<String>>> updated = new HashMap<>(snapshot.getValue());
+        Set<EarthSurfacePoint> touched = new HashSet<>();
+        for (SubscriptionChange change : changes) {
+            EarthSurfacePoint point = new EarthSurfacePoint(new GeographicLocation(change.getLatitude(), change.getLongitude()), change.getElevation());
+            touch(updated, touched, point);
+            if (SubscriptionChange.DELETED.equals(change.getType()))
+                remove(updated, point, change.getForecastedParameterName(), change.getCustomerId());
+            else
+                add(updated, point, change.getForecastedParameterName(), change.getCustomerId());
+        }
+        for (EarthSurfacePoint point : touched) {
+            Map<String, Set<String>> parameters = updated.get(point);
+            if (parameters != null)
+                updated.put(point, freezeParameters(parameters));
+        }
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> updatedSnapshot = new Versioned<>(Collections.unmodifiableMap(updated), version);
+
+        snapshots.computeIfPresent(modelName, (name, current) ->
+                generation(name) == generation && current.snapshot == snapshot ? checked(updatedSnapshot) : current);
+        return updatedSnapshot;
+    }
+
+    // The subscriptions of the models were changed by a local commit: their snapshots are checked on the next request,
+    // and loads, checks and updates in flight are not stored.
+    public void markChanged(Collection<String> modelNames) {
+        for (String modelName : modelNames) {
+            snapshots.compute(modelName, (name, current) -> {
+                generations.merge(name, 1L, Long::sum);
+                return current == null ? null : new Entry(current.snapshot, 0L, false);
+            });
+        }
+    }
+
+    // The model does not exist (anymore).
+    public void remove(String modelName) {
+        snapshots.compute(modelName, (name, current) -> {
+            generations.merge(name, 1L, Long::sum);
+            return null;
+        });
+    }
+
+    private Entry checked(Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> snapshot) {
+        return new Entry(snapshot, nanoClock.getAsLong(), true);
+    }
+
+    // Replaces the (shared, unmodifiable) entry of the given point with a private mutable copy.
+    private static void touch(Map<EarthSurfacePoint, Map<String, Set<String>>> snapshot, Set<EarthSurfacePoint> touched, EarthSurfacePoint point) {
+        if (touched.add(point) && snapshot.containsKey(point)) {
+            Map<String, Set<String>> parameters = new HashMap<>();
+            snapshot.get(point).forEach((parameter, customers) -> parameters.put(parameter, new HashSet<>(customers)));
+            snapshot.put(point, parameters);
+        }
+    }
+
+    private static void add(Map<EarthSurfacePoint, Map<String, Set<String>>> snapshot, EarthSurfacePoint point, String parameter, String customerId) {
+        snapshot.computeIfAbsent(point, p -> new HashMap<>())
+                .computeIfAbsent(parameter, p -> new HashSet<>())
+                .add(customerId);
+    }
+
+    private static void remove(Map<EarthSurfacePoint, Map<String, Set<String>>> snapshot, EarthSurfacePoint point, String parameter, String customerId) {
+        Map<String, Set<String>> parameters = snapshot.get(point);
+        if (parameters == null)
+            return;
+
+        Set<String> customers = parameters.get(parameter);
+        if (customers != null) {
+            customers.remove(customerId);
+            if (customers.isEmpty())
+                parameters.remove(parameter);
+        }
+        if (parameters.isEmpty())
+            snapshot.remove(point);
+    }
+
+    private static Map<EarthSurfacePoint, Map<String, Set<String>>> freeze(Map<EarthSurfacePoint, Map<String, Set<String>>> snapshot) {
+        snapshot.replaceAll((point, parameters) -> freezeParameters(parameters));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private static Map<String, Set<String>> freezeParameters(Map<String, Set<String>> parameters) {
+        parameters.replaceAll((parameter, customers) -> Collections.unmodifiableSet(customers));
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    private static final class Entry {
+        private final Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> snapshot;
+        // System.nanoTime() of the last check, only meaningful if checked.
+        private final long checkedAt;
+        private final boolean checked;
+
+        private Entry(Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> snapshot, long checkedAt, boolean checked) {
+            this.snapshot = snapshot;
+            this.checkedAt = checkedAt;
+            this.checked = checked;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+// Data together with the version (see DataVersionService) that was read before it.
+public class Versioned<T> {
+    private final T value;
+    private final long version;
+
+    public Versioned(T value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,22 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Access to virtual threads (Java 21+) from code compiled for Java 8, through reflection.
+public final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    // Executor that starts a new virtual thread for every task, or empty if the running JVM has no virtual threads.
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return Optional.of((ExecutorService) method.invoke(null));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+}
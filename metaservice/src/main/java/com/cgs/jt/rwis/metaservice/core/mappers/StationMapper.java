@@ -1,14 +1,28 @@
 package com.cgs.jt.rwis.metaservice.core.mappers;
 
+import com.cgs.jt.rwis.metaservice.api.BaseCanSeeStationDTO;
+import com.cgs.jt.rwis.metaservice.api.ParameterOnStationDTO;
 import com.cgs.jt.rwis.metaservice.api.StationDTO;
+import com.cgs.jt.rwis.metaservice.db.entity.BaseCanSeeStation;
+import com.cgs.jt.rwis.metaservice.db.entity.ParameterOnStation;
 import com.cgs.jt.rwis.metaservice.db.entity.Station;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 import java.util.List;
+import java.util.Set;
 
 @Mapper
 public interface StationMapper {
     StationDTO toDto(Station station);
+
+    // Without the nested collections, so they are not loaded.
+    @Mapping(target = "parameterOnStationSet", ignore = true)
+    @Mapping(target = "baseCanSeeStationSet", ignore = true)
+    StationDTO toSummaryDto(Station station);
+
+    Set<ParameterOnStationDTO> toParameterOnStationDtoSet(Set<ParameterOnStation> parameterOnStationSet);
+    Set<BaseCanSeeStationDTO> toBaseCanSeeStationDtoSet(Set<BaseCanSeeStation> baseCanSeeStationSet);
     List<StationDTO> toDtoList(List<Station> stationList);
     Station fromDto(StationDTO stationDTO);
 }
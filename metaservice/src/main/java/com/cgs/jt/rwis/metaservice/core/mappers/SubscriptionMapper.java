@@ -3,7 +3,9 @@ import com.cgs.jt.rwis.api.EarthSurfacePoint;
 import com.cgs.jt.rwis.api.GeographicLocation;
 import com.cgs.jt.rwis.api.ParameterForecastSubscription;
 import com.cgs.jt.rwis.api.params.ForecastedParameter;
+import com.cgs.jt.rwis.metaservice.api.SubscriptionChangeDTO;
 import com.cgs.jt.rwis.metaservice.db.entity.Subscription;
+import com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 
@@ -32,4 +34,18 @@ public interface SubscriptionMapper {
                 subscription.getModel().getName(),
                 subscription.getCustomerId());
     }
+
+    List<SubscriptionChangeDTO> toSubscriptionChangeDTOList(List<SubscriptionChange> subscriptionChangeList);
+
+    default SubscriptionChangeDTO toSubscriptionChangeDTO(SubscriptionChange subscriptionChange) {
+        return new SubscriptionChangeDTO(subscriptionChange.getVersion(), SubscriptionChangeDTO.Type.valueOf(subscriptionChange.getType()),
+                toParameterForecastSubscription(subscriptionChange));
+    }
+
+    default ParameterForecastSubscription toParameterForecastSubscription(SubscriptionChange subscriptionChange) {
+        return new ParameterForecastSubscription(ForecastedParameter.get(subscriptionChange.getForecastedParameterName()),
+                new EarthSurfacePoint(new GeographicLocation(subscriptionChange.getLatitude(), subscriptionChange.getLongitude()), subscriptionChange.getElevation()),
+                subscriptionChange.getModelName(),
+                subscriptionChange.getCustomerId());
+    }
 }
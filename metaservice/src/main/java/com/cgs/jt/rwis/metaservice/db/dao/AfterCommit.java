@@ -0,0 +1,24 @@
+package com.cgs.jt.rwis.metaservice.db.dao;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+// Runs an action only when the surrounding Hibernate transaction is committed (never on rollback).
+public class AfterCommit implements Synchronization {
+    private final Runnable action;
+
+    public AfterCommit(Runnable action) {
+        this.action = action;
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+        if (status == Status.STATUS_COMMITTED) {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.cgs.jt.rwis.metaservice.db.dao;
+
+import com.cgs.jt.rwis.metaservice.db.entity.DataVersion;
+import org.hibernate.SessionFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DataVersionDAO extends ReplicaAwareDAO<DataVersion> {
+    public DataVersionDAO(SessionFactory factory, SessionFactory replicaFactory) {
+        super(factory, replicaFactory);
+    }
+
+    // Versions of those of the given names that have one. Only the values are read, so a later read in the same session
+    // does not return the entities of an earlier one.
+    public Map<String, Long> findVersions(Collection<String> names) {
+        List<Object[]> rows = currentSession()
+                .createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.DataVersion.getVersionsByName", Object[].class)
+                .setParameterList("names", names)
+                .getResultList();
+
+        Map<String, Long> versions = new HashMap<>();
+        for (Object[] row : rows) {
+            versions.put((String) row[0], (Long) row[1]);
+        }
+        return versions;
+    }
+
+    // The session factory (primary or replica) the versions are read through.
+    public SessionFactory currentSessionFactory() {
+        return currentSession().getSessionFactory();
+    }
+}
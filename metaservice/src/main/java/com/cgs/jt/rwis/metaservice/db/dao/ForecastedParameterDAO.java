@@ -1,7 +1,6 @@
 package com.cgs.jt.rwis.metaservice.db.dao;
 
 import com.cgs.jt.rwis.metaservice.db.entity.ForecastedParameter;
-import io.dropwizard.hibernate.AbstractDAO;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.query.Query;
@@ -9,9 +8,9 @@ import org.hibernate.query.Query;
 import java.util.List;
 import java.util.Optional;
 
-public class ForecastedParameterDAO extends AbstractDAO<ForecastedParameter>  {
-    public ForecastedParameterDAO(SessionFactory factory) {
-        super(factory);
+public class ForecastedParameterDAO extends ReplicaAwareDAO<ForecastedParameter>  {
+    public ForecastedParameterDAO(SessionFactory factory, SessionFactory replicaFactory) {
+        super(factory, replicaFactory);
     }
 
     public ForecastedParameter create(ForecastedParameter parameter) {
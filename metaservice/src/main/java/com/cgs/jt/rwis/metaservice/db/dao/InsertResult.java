@@ -0,0 +1,23 @@
+package com.cgs.jt.rwis.metaservice.db.dao;
+
+import java.util.List;
+
+// Result of an insert that skips the rows that already exist: the given rows that were inserted and the stored rows
+// that already existed (which may differ from the given ones in their non-key columns).
+public class InsertResult<E> {
+    private final List<E> inserted;
+    private final List<E> existing;
+
+    public InsertResult(List<E> inserted, List<E> existing) {
+        this.inserted = inserted;
+        this.existing = existing;
+    }
+
+    public List<E> getInserted() {
+        return inserted;
+    }
+
+    public List<E> getExisting() {
+        return existing;
+    }
+}
@@ -1,36 +1,51 @@
 package com.cgs.jt.rwis.metaservice.db.dao;
 
 import com.cgs.jt.rwis.metaservice.db.entity.Location;
-import com.cgs.jt.rwis.metaservice.db.entity.Subscription;
-import io.dropwizard.hibernate.AbstractDAO;
-import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
-import java.util.Optional;
+import java.sql.PreparedStatement;
+import java.util.Collection;
 
-public class LocationDAO extends AbstractDAO<Location> {
-    public LocationDAO(SessionFactory factory) {
-        super(factory);
-    }
+// Locations are inserted together with the subscriptions and METRO configs that reference them (see SubscriptionDAO and
+// MetroConfigDAO).
+public class LocationDAO extends ReplicaAwareDAO<Location> {
+    // Both NOT EXISTS probes use the leading (latitude, longitude) columns of model_location_idx and metro_config_pk.
+    private static final String DELETE_IF_UNUSED = "DELETE FROM location l WHERE l.latitude = ? AND l.longitude = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM subscription s WHERE s.latitude = l.latitude AND s.longitude = l.longitude) " +
+            "AND NOT EXISTS (SELECT 1 FROM metro_config m WHERE m.latitude = l.latitude AND m.longitude = l.longitude)";
+    private static final String DELETE_ALL_IF_UNUSED = "DELETE FROM location l " +
+            "USING unnest(?::float8[], ?::float8[]) AS t (latitude, longitude) " +
+            "WHERE l.latitude = t.latitude AND l.longitude = t.longitude " +
+            "AND NOT EXISTS (SELECT 1 FROM subscription s WHERE s.latitude = l.latitude AND s.longitude = l.longitude) " +
+            "AND NOT EXISTS (SELECT 1 FROM metro_config m WHERE m.latitude = l.latitude AND m.longitude = l.longitude)";
 
-    public Location create(Location location) {
-        Location createdLocation = persist(location);
-        return createdLocation;
+    public LocationDAO(SessionFactory factory, SessionFactory replicaFactory) {
+        super(factory, replicaFactory);
     }
 
-    public Optional<Location> find(Location.LocationId id) {
-        Location location = get(id);
-        return Optional.ofNullable(location);
+    // Deletes the location in a single statement if no subscription or METRO config uses it, returns false otherwise.
+    public boolean deleteIfUnused(double latitude, double longitude) {
+        return currentSession().doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_IF_UNUSED)) {
+                statement.setDouble(1, latitude);
+                statement.setDouble(2, longitude);
+                return statement.executeUpdate() > 0;
+            }
+        });
     }
 
-    public Optional<Location> delete(Location.LocationId id) {
-        Location persistedLocation = get(id);
+    // Deletes, in a single statement, those of the given locations that no subscription or METRO config uses. Returns
+    // the number of deleted locations.
+    public int deleteAllIfUnused(Collection<Location> locations) {
+        Double[] latitudes = locations.stream().map(Location::getLatitude).toArray(Double[]::new);
+        Double[] longitudes = locations.stream().map(Location::getLongitude).toArray(Double[]::new);
 
-        if (persistedLocation != null) {
-            Session currentSession = currentSession();
-            currentSession.delete(persistedLocation);
-            return Optional.of(persistedLocation);
-        }
-        return Optional.empty();
+        return currentSession().doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_ALL_IF_UNUSED)) {
+                statement.setArray(1, connection.createArrayOf("float8", latitudes));
+                statement.setArray(2, connection.createArrayOf("float8", longitudes));
+                return statement.executeUpdate();
+            }
+        });
     }
 }
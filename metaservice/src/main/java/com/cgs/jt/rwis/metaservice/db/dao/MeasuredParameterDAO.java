@@ -1,7 +1,6 @@
 package com.cgs.jt.rwis.metaservice.db.dao;
 
 import com.cgs.jt.rwis.metaservice.db.entity.MeasuredParameter;
-import io.dropwizard.hibernate.AbstractDAO;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.query.Query;
@@ -9,9 +8,9 @@ import org.hibernate.query.Query;
 import java.util.List;
 import java.util.Optional;
 
-public class MeasuredParameterDAO extends AbstractDAO<MeasuredParameter> {
-    public MeasuredParameterDAO(SessionFactory factory) {
-        super(factory);
+public class MeasuredParameterDAO extends ReplicaAwareDAO<MeasuredParameter> {
+    public MeasuredParameterDAO(SessionFactory factory, SessionFactory replicaFactory) {
+        super(factory, replicaFactory);
     }
 
     public MeasuredParameter create(MeasuredParameter parameter) {
@@ -1,22 +1,84 @@
 package com.cgs.jt.rwis.metaservice.db.dao;
 
+import com.cgs.jt.rwis.metaservice.db.entity.Location;
 import com.cgs.jt.rwis.metaservice.db.entity.MetroConfig;
-import io.dropwizard.hibernate.AbstractDAO;
-import org.hibernate.Session;
+import com.cgs.jt.rwis.metaservice.db.entity.Model;
 import org.hibernate.SessionFactory;
 import org.hibernate.query.Query;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
-public class MetroConfigDAO extends AbstractDAO<MetroConfig> {
-    public MetroConfigDAO(SessionFactory factory) {
-        super(factory);
+public class MetroConfigDAO extends ReplicaAwareDAO<MetroConfig> {
+    // The location is inserted by the data-modifying CTE if it does not exist yet, the foreign key of the config is only
+    // checked at the end of the statement. An existing config is not written (no new row version, no triggers), it is
+    // read by the second SELECT, which sees the table as it was before the statement.
+    private static final String INSERT_IF_NOT_EXISTS =
+            "WITH new_location AS (INSERT INTO location (latitude, longitude) VALUES (?, ?) ON CONFLICT DO NOTHING), " +
+            "inserted AS (INSERT INTO metro_config (model_name, latitude, longitude, config) VALUES (?, ?, ?, ?::jsonb) " +
+            "ON CONFLICT DO NOTHING RETURNING config::text AS config) " +
+            "SELECT config, true AS inserted FROM inserted " +
+            "UNION ALL " +
+            "SELECT config::text, false AS inserted FROM metro_config WHERE model_name = ? AND latitude = ? AND longitude = ?";
+    // A config inserted by a transaction that committed while INSERT_IF_NOT_EXISTS was running is skipped by it but is
+    // not in its snapshot; it is read again with this.
+    private static final String FIND_CONFIG = "SELECT config::text FROM metro_config WHERE model_name = ? AND latitude = ? AND longitude = ?";
+    private static final String DELETE = "DELETE FROM metro_config WHERE model_name = ? AND latitude = ? AND longitude = ? " +
+            "RETURNING config::text";
+
+    public MetroConfigDAO(SessionFactory factory, SessionFactory replicaFactory) {
+        super(factory, replicaFactory);
     }
 
-    public MetroConfig create(MetroConfig metroConfig) {
-        MetroConfig metroConfigCreated = persist(metroConfig);
-        return metroConfigCreated;
+    // Inserts the config (and its location) if there is no config for the model and location yet, in a single
+    // statement that does not write an existing config. Returns the given config if it was inserted, otherwise the
+    // stored config.
+    public InsertResult<MetroConfig> createIfNotExists(MetroConfig metroConfig) {
+        String modelName = metroConfig.getModel().getName();
+        double latitude = metroConfig.getLocation().getLatitude();
+        double longitude = metroConfig.getLocation().getLongitude();
+        return currentSession().doReturningWork(connection -> {
+            String storedConfig;
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_IF_NOT_EXISTS)) {
+                statement.setDouble(1, latitude);
+                statement.setDouble(2, longitude);
+                statement.setString(3, modelName);
+                statement.setDouble(4, latitude);
+                statement.setDouble(5, longitude);
+                statement.setString(6, metroConfig.getConfig());
+                statement.setString(7, modelName);
+                statement.setDouble(8, latitude);
+                statement.setDouble(9, longitude);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next())
+                        storedConfig = null;
+                    else if (resultSet.getBoolean(2))
+                        return new InsertResult<>(Collections.singletonList(metroConfig), Collections.emptyList());
+                    else
+                        storedConfig = resultSet.getString(1);
+                }
+            }
+
+            if (storedConfig == null) {
+                try (PreparedStatement statement = connection.prepareStatement(FIND_CONFIG)) {
+                    statement.setString(1, modelName);
+                    statement.setDouble(2, latitude);
+                    statement.setDouble(3, longitude);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        // Deleted again by another transaction since it was skipped: this one still did not insert it.
+                        storedConfig = resultSet.next() ? resultSet.getString(1) : metroConfig.getConfig();
+                    }
+                }
+            }
+
+            MetroConfig storedMetroConfig = toMetroConfig(modelName, latitude, longitude, storedConfig);
+            return new InsertResult<>(Collections.emptyList(), Collections.singletonList(storedMetroConfig));
+        });
     }
 
     @SuppressWarnings("unchecked")
@@ -26,6 +88,46 @@ public class MetroConfigDAO extends AbstractDAO<MetroConfig> {
         return metroConfigList;
     }
 
+    @SuppressWarnings("unchecked")
+    public List<MetroConfig> findPage(int limit) {
+        Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getPage");
+        query.setMaxResults(limit);
+        List<MetroConfig> metroConfigList = (List<MetroConfig>)query.getResultList();
+        return metroConfigList;
+    }
+
+    // Returns up to limit metroConfigs that follow the given key in (model name, latitude, longitude) order.
+    @SuppressWarnings("unchecked")
+    public List<MetroConfig> findPageAfter(String modelName, double latitude, double longitude, int limit) {
+        Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getPageAfter");
+        query.setParameter("model_name", modelName);
+        query.setParameter("latitude", latitude);
+        query.setParameter("longitude", longitude);
+        query.setMaxResults(limit);
+        List<MetroConfig> metroConfigList = (List<MetroConfig>)query.getResultList();
+        return metroConfigList;
+    }
+
+    public void scrollAll(Consumer<MetroConfig> consumer) {
+        QueryScroller.scroll(currentSession(), namedQuery("com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getAll"), consumer);
+    }
+
+    public void scrollAllByModelName(String modelName, Consumer<MetroConfig> consumer) {
+        Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getAllByModelName");
+        query.setParameter("model_name", modelName);
+        QueryScroller.scroll(currentSession(), query, consumer);
+    }
+
+    public void scrollAllByModelNameWithin(String modelName, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, Consumer<MetroConfig> consumer) {
+        Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getAllByModelNameWithin");
+        query.setParameter("model_name", modelName);
+        query.setParameter("min_latitude", minLatitude);
+        query.setParameter("max_latitude", maxLatitude);
+        query.setParameter("min_longitude", minLongitude);
+        query.setParameter("max_longitude", maxLongitude);
+        QueryScroller.scroll(currentSession(), query, consumer);
+    }
+
     public Optional<MetroConfig> find(MetroConfig.MetroConfigId id) {
         MetroConfig metroConfigPersisted = get(id);
         return Optional.ofNullable(metroConfigPersisted);
@@ -43,15 +145,35 @@ public class MetroConfigDAO extends AbstractDAO<MetroConfig> {
         return Optional.empty();
     }*/
 
-    public Optional<MetroConfig> delete(MetroConfig.MetroConfigId id) {
-        MetroConfig metroConfigPersisted = get(id);
+    // Deletes the config in a single statement. The returned config is not attached to the session.
+    public Optional<MetroConfig> delete(String modelName, double latitude, double longitude) {
+        return currentSession().doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                statement.setString(1, modelName);
+                statement.setDouble(2, latitude);
+                statement.setDouble(3, longitude);
 
-        if (metroConfigPersisted != null) {
-            Session currentSession = currentSession();
-            currentSession.delete(metroConfigPersisted);
-            return Optional.of(metroConfigPersisted);
-        }
-        return Optional.empty();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next())
+                        return Optional.empty();
+                    return Optional.of(toMetroConfig(modelName, latitude, longitude, resultSet.getString(1)));
+                }
+            }
+        });
+    }
+
+    private static MetroConfig toMetroConfig(String modelName, double latitude, double longitude, String config) {
+        Model model = new Model();
+        model.setName(modelName);
+        Location location = new Location();
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+
+        MetroConfig metroConfig = new MetroConfig();
+        metroConfig.setModel(model);
+        metroConfig.setLocation(location);
+        metroConfig.setConfig(config);
+        return metroConfig;
     }
 
 }
@@ -1,7 +1,6 @@
 package com.cgs.jt.rwis.metaservice.db.dao;
 
 import com.cgs.jt.rwis.metaservice.db.entity.Model;
-import io.dropwizard.hibernate.AbstractDAO;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.query.Query;
@@ -9,9 +8,9 @@ import org.hibernate.query.Query;
 import java.util.List;
 import java.util.Optional;
 
-public class ModelDAO extends AbstractDAO<Model> {
-    public ModelDAO(SessionFactory factory) {
-        super(factory);
+public class ModelDAO extends ReplicaAwareDAO<Model> {
+    public ModelDAO(SessionFactory factory, SessionFactory replicaFactory) {
+        super(factory, replicaFactory);
     }
 
     public Model create(Model model) {
@@ -26,11 +25,35 @@ public class ModelDAO extends AbstractDAO<Model> {
         return modelList;
     }
 
+    // Returns up to limit models ordered by name, starting after the given name (or from the first one if null).
+    @SuppressWarnings("unchecked")
+    public List<Model> findPage(String afterName, int limit) {
+        Query query;
+        if (afterName == null) {
+            query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Model.getPage");
+        } else {
+            query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Model.getPageAfter");
+            query.setParameter("name", afterName);
+        }
+        query.setMaxResults(limit);
+        List<Model> modelList = (List<Model>)query.getResultList();
+        return modelList;
+    }
+
     public Optional<Model> find(String name) {
         Model persistedModel = get(name);
         return Optional.ofNullable(persistedModel);
     }
 
+    // Asks the database, not the second-level cache.
+    public boolean exists(String name) {
+        Long count = currentSession()
+                .createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.Model.countByName", Long.class)
+                .setParameter("name", name)
+                .getSingleResult();
+        return count > 0;
+    }
+
     /*public Optional<Model> update(String name, Model model) {
         Model persistedModel = get(name);
         if (persistedModel != null) {
@@ -0,0 +1,86 @@
+package com.cgs.jt.rwis.metaservice.db.dao;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Feeds query results to a consumer one entity at a time using a forward-only cursor, so memory use does not grow
+// with the size of the result.
+class QueryScroller {
+    // Rows fetched per round trip; the session is cleared after every batch so scrolled entities can be collected.
+    private static final int FETCH_SIZE = 500;
+
+    private QueryScroller() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> void scroll(Session session, Query query, Consumer<E> consumer) {
+        inTransaction(session, () -> {
+            try (ScrollableResults results = open(query)) {
+                int count = 0;
+                while (results.next()) {
+                    consumer.accept((E) results.get(0));
+                    if (++count % FETCH_SIZE == 0)
+                        session.clear();
+                }
+            }
+        });
+    }
+
+    // Feeds the entities in lists of up to batchSize, and clears the session after each list. The lazy collections of
+    // a list can thus be batch fetched (@BatchSize) while it is consumed. The list is reused, the consumer must not
+    // keep it.
+    @SuppressWarnings("unchecked")
+    static <E> void scrollInBatches(Session session, Query query, int batchSize, Consumer<List<E>> consumer) {
+        inTransaction(session, () -> {
+            try (ScrollableResults results = open(query)) {
+                List<E> batch = new ArrayList<>(batchSize);
+                while (results.next()) {
+                    batch.add((E) results.get(0));
+                    if (batch.size() == batchSize) {
+                        consumer.accept(batch);
+                        batch.clear();
+                        session.clear();
+                    }
+                }
+                if (!batch.isEmpty())
+                    consumer.accept(batch);
+            }
+        });
+    }
+
+    private static ScrollableResults open(Query query) {
+        return query
+                .setReadOnly(true)
+                .setFetchSize(FETCH_SIZE)
+                .setCacheMode(CacheMode.IGNORE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
+    private static void inTransaction(Session session, Runnable work) {
+        // Results are typically streamed while the response is written, after @UnitOfWork has already committed its
+        // transaction. PostgreSQL only uses a cursor (instead of reading all the rows) inside a transaction.
+        Transaction transaction = session.getTransaction();
+        boolean ownTransaction = !transaction.isActive();
+        if (ownTransaction)
+            transaction.begin();
+
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            if (ownTransaction)
+                transaction.rollback();
+            throw e;
+        }
+
+        if (ownTransaction)
+            transaction.commit();
+    }
+}
@@ -0,0 +1,31 @@
+package com.cgs.jt.rwis.metaservice.db.dao;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.context.internal.ManagedSessionContext;
+
+// Base class of the DAOs. Uses the session of the replica database inside a @UnitOfWork("hibernate-replica") (read-only
+// resource methods) and the session of the primary database otherwise. Without a replica database both session
+// factories are the same.
+public abstract class ReplicaAwareDAO<E> extends AbstractDAO<E> {
+    private final SessionFactory sessionFactory;
+    private final SessionFactory replicaSessionFactory;
+
+    protected ReplicaAwareDAO(SessionFactory sessionFactory, SessionFactory replicaSessionFactory) {
+        super(sessionFactory);
+        this.sessionFactory = sessionFactory;
+        this.replicaSessionFactory = replicaSessionFactory;
+    }
+
+    @Override
+    protected Session currentSession() {
+        if (replicaSessionFactory != sessionFactory && ManagedSessionContext.hasBind(replicaSessionFactory))
+            return replicaSessionFactory.getCurrentSession();
+        return super.currentSession();
+    }
+
+    public void afterCommit(Runnable action) {
+        currentSession().getTransaction().registerSynchronization(new AfterCommit(action));
+    }
+}
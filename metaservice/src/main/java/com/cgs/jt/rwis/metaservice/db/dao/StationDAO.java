@@ -1,17 +1,17 @@
 package com.cgs.jt.rwis.metaservice.db.dao;
 
 import com.cgs.jt.rwis.metaservice.db.entity.Station;
-import io.dropwizard.hibernate.AbstractDAO;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.query.Query;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
-public class StationDAO extends AbstractDAO<Station> {
-    public StationDAO(SessionFactory sessionFactory) {
-        super(sessionFactory);
+public class StationDAO extends ReplicaAwareDAO<Station> {
+    public StationDAO(SessionFactory sessionFactory, SessionFactory replicaFactory) {
+        super(sessionFactory, replicaFactory);
     }
 
     public Station create(Station station) {
@@ -24,6 +24,38 @@ public class StationDAO extends AbstractDAO<Station> {
         return list((Query<Station>) namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Station.getAll"));
     }
 
+    @SuppressWarnings("unchecked")
+    public List<Station> findWithin(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        Query<Station> query = (Query<Station>) namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Station.getWithin");
+        query.setParameter("min_latitude", minLatitude);
+        query.setParameter("max_latitude", maxLatitude);
+        query.setParameter("min_longitude", minLongitude);
+        query.setParameter("max_longitude", maxLongitude);
+        return list(query);
+    }
+
+    // Returns up to limit stations ordered by ID, starting after the given ID (or from the first one if null).
+    @SuppressWarnings("unchecked")
+    public List<Station> findPage(Integer afterId, int limit) {
+        Query<Station> query;
+        if (afterId == null) {
+            query = (Query<Station>) namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Station.getPage");
+        } else {
+            query = (Query<Station>) namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Station.getPageAfter");
+            query.setParameter("id", afterId);
+        }
+        return list(query.setMaxResults(limit));
+    }
+
+    public void scrollAll(Consumer<Station> consumer) {
+        QueryScroller.scroll(currentSession(), namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Station.getAll"), consumer);
+    }
+
+    // The lazy collections of each list are loaded together (Station.FETCH_BATCH_SIZE).
+    public void scrollAllInBatches(Consumer<List<Station>> consumer) {
+        QueryScroller.scrollInBatches(currentSession(), namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Station.getAll"), Station.FETCH_BATCH_SIZE, consumer);
+    }
+
     public Optional<Station> find(int id) {
         Station persistedStation = get(id);
         return Optional.ofNullable(persistedStation);
@@ -0,0 +1,53 @@
+package com.cgs.jt.rwis.metaservice.db.dao;
+
+import com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange;
+import org.hibernate.SessionFactory;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+
+public class SubscriptionChangeDAO extends ReplicaAwareDAO<SubscriptionChange> {
+    // Deletes whole versions: every change up to the newest version that has a change older than the retention. The
+    // pruned version of each model is raised to its newest deleted change, in the same statement.
+    private static final String PRUNE =
+            "WITH pruned AS (DELETE FROM subscription_change " +
+            "WHERE version <= (SELECT max(version) FROM subscription_change WHERE changed_at < now() - ? * interval '1 millisecond') " +
+            "RETURNING model_name, version) " +
+            "INSERT INTO data_version (name, version) " +
+            "SELECT 'subscription-changes-pruned/' || model_name, max(version) FROM pruned GROUP BY model_name " +
+            "ON CONFLICT (name) DO UPDATE SET version = greatest(data_version.version, excluded.version)";
+
+    public SubscriptionChangeDAO(SessionFactory factory, SessionFactory replicaFactory) {
+        super(factory, replicaFactory);
+    }
+
+    // Changes of the model with a version after since, up to and including until, in the order they were made.
+    public List<SubscriptionChange> findAllByModelNameBetween(String modelName, long since, long until) {
+        return currentSession()
+                .createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange.getAllByModelNameBetween", SubscriptionChange.class)
+                .setParameter("model_name", modelName)
+                .setParameter("since", since)
+                .setParameter("until", until)
+                .getResultList();
+    }
+
+    // Changes of all the models with a version after since, up to and including until, in the order they were made.
+    public List<SubscriptionChange> findAllBetween(long since, long until) {
+        return currentSession()
+                .createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange.getAllBetween", SubscriptionChange.class)
+                .setParameter("since", since)
+                .setParameter("until", until)
+                .getResultList();
+    }
+
+    // Deletes the changes older than the retention (clock of the database). Returns the number of models whose changes
+    // were pruned.
+    public int prune(long retentionMillis) {
+        return currentSession().doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(PRUNE)) {
+                statement.setLong(1, retentionMillis);
+                return statement.executeUpdate();
+            }
+        });
+    }
+}
@@ -1,22 +1,117 @@
 package com.cgs.jt.rwis.metaservice.db.dao;
 
+import com.cgs.jt.rwis.metaservice.db.entity.ForecastedParameter;
+import com.cgs.jt.rwis.metaservice.db.entity.Location;
+import com.cgs.jt.rwis.metaservice.db.entity.Model;
 import com.cgs.jt.rwis.metaservice.db.entity.Subscription;
-import io.dropwizard.hibernate.AbstractDAO;
-import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.query.Query;
 
-import java.util.List;
-import java.util.Optional;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
 
-public class SubscriptionDAO extends AbstractDAO<Subscription> {
-    public SubscriptionDAO(SessionFactory factory) {
-        super(factory);
+public class SubscriptionDAO extends ReplicaAwareDAO<Subscription> {
+    // The subscriptions are passed as one array per column. Missing locations are inserted by the data-modifying CTE,
+    // the foreign keys of the subscriptions are only checked at the end of the statement, so they already see them.
+    // Existing subscriptions are not written (no new row version, no triggers), they are read with their stored
+    // elevation by the second SELECT, which sees the table as it was before the statement.
+    private static final String INSERT_IF_NOT_EXISTS =
+            "WITH input (model_name, latitude, longitude, forecasted_parameter_name, customer_id, elevation) AS (" +
+            "SELECT * FROM unnest(?::varchar[], ?::float8[], ?::float8[], ?::varchar[], ?::varchar[], ?::float8[])), " +
+            "new_location AS (INSERT INTO location (latitude, longitude) SELECT DISTINCT latitude, longitude FROM input ON CONFLICT DO NOTHING), " +
+            "inserted AS (INSERT INTO subscription (model_name, latitude, longitude, forecasted_parameter_name, customer_id, elevation) " +
+            "SELECT model_name, latitude, longitude, forecasted_parameter_name, customer_id, elevation FROM input ON CONFLICT DO NOTHING " +
+            "RETURNING model_name, latitude, longitude, forecasted_parameter_name, customer_id, elevation) " +
+            "SELECT model_name, latitude, longitude, forecasted_parameter_name, customer_id, elevation, true AS inserted FROM inserted " +
+            "UNION ALL " +
+            "SELECT s.model_name, s.latitude, s.longitude, s.forecasted_parameter_name, s.customer_id, s.elevation, false AS inserted " +
+            "FROM subscription s JOIN input USING (model_name, latitude, longitude, forecasted_parameter_name, customer_id)";
+    // Subscriptions inserted by a transaction that committed while INSERT_IF_NOT_EXISTS was running are skipped by it
+    // but are not in its snapshot; they are read again with this.
+    private static final String FIND_EXISTING = "SELECT s.model_name, s.latitude, s.longitude, s.forecasted_parameter_name, s.customer_id, s.elevation " +
+            "FROM subscription s JOIN unnest(?::varchar[], ?::float8[], ?::float8[], ?::varchar[], ?::varchar[]) " +
+            "AS t (model_name, latitude, longitude, forecasted_parameter_name, customer_id) " +
+            "USING (model_name, latitude, longitude, forecasted_parameter_name, customer_id)";
+    private static final String DELETE = "DELETE FROM subscription " +
+            "WHERE model_name = ? AND latitude = ? AND longitude = ? AND forecasted_parameter_name = ? AND customer_id = ? " +
+            "RETURNING elevation";
+    private static final String DELETE_ALL_OF_CUSTOMER = "DELETE FROM subscription s " +
+            "USING unnest(?::varchar[], ?::float8[], ?::float8[], ?::varchar[]) AS t (model_name, latitude, longitude, forecasted_parameter_name) " +
+            "WHERE s.customer_id = ? AND s.model_name = t.model_name AND s.latitude = t.latitude AND s.longitude = t.longitude " +
+            "AND s.forecasted_parameter_name = t.forecasted_parameter_name " +
+            "RETURNING s.model_name, s.latitude, s.longitude, s.forecasted_parameter_name, s.elevation";
+    private static final String DELETE_ALL_BY_CUSTOMER_ID = "DELETE FROM subscription WHERE customer_id = ? " +
+            "RETURNING model_name, latitude, longitude, forecasted_parameter_name, elevation";
+    // Transaction-level advisory lock on (subscription, hash of the customer ID); a hash collision only serializes two
+    // customers.
+    private static final String LOCK_CUSTOMER = "SELECT pg_advisory_xact_lock(hashtext('subscription'), hashtext(?))";
+
+    public SubscriptionDAO(SessionFactory factory, SessionFactory replicaFactory) {
+        super(factory, replicaFactory);
     }
 
-    public Subscription create(Subscription subscription) {
-        Subscription createdSubscription = persist(subscription);
-        return createdSubscription;
+    // Inserts the subscriptions (and their locations) that do not exist yet, in a single statement that does not write
+    // the existing ones. The given subscriptions must be distinct. Returns the given subscriptions that were inserted and
+    // the stored subscriptions that already existed, both in the given order.
+    public InsertResult<Subscription> createIfNotExists(Collection<Subscription> subscriptions) {
+        return currentSession().doReturningWork(connection -> {
+            Set<List<Object>> insertedKeys = new HashSet<>();
+            Map<List<Object>, Subscription> storedSubscriptions = new HashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_IF_NOT_EXISTS)) {
+                setKeyArrays(connection, statement, subscriptions);
+                statement.setArray(6, connection.createArrayOf("float8", subscriptions.stream().map(Subscription::getElevation).toArray(Double[]::new)));
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Subscription row = toSubscription(resultSet);
+                        if (resultSet.getBoolean(7))
+                            insertedKeys.add(key(row));
+                        else
+                            storedSubscriptions.put(key(row), row);
+                    }
+                }
+            }
+
+            List<Subscription> skippedSubscriptions = new ArrayList<>();
+            for (Subscription subscription : subscriptions) {
+                if (!insertedKeys.contains(key(subscription)) && !storedSubscriptions.containsKey(key(subscription)))
+                    skippedSubscriptions.add(subscription);
+            }
+            if (!skippedSubscriptions.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement(FIND_EXISTING)) {
+                    setKeyArrays(connection, statement, skippedSubscriptions);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            Subscription row = toSubscription(resultSet);
+                            storedSubscriptions.put(key(row), row);
+                        }
+                    }
+                }
+            }
+
+            List<Subscription> insertedSubscriptions = new ArrayList<>();
+            List<Subscription> existingSubscriptions = new ArrayList<>();
+            for (Subscription subscription : subscriptions) {
+                if (insertedKeys.contains(key(subscription)))
+                    insertedSubscriptions.add(subscription);
+                else
+                    // Deleted again by another transaction since it was skipped: this one still did not insert it.
+                    existingSubscriptions.add(storedSubscriptions.getOrDefault(key(subscription), subscription));
+            }
+            return new InsertResult<>(insertedSubscriptions, existingSubscriptions);
+        });
+    }
+
+    // Sets the keys of the subscriptions as the first five (array) parameters.
+    private static void setKeyArrays(Connection connection, PreparedStatement statement, Collection<Subscription> subscriptions) throws SQLException {
+        statement.setArray(1, connection.createArrayOf("varchar", subscriptions.stream().map(s -> s.getModel().getName()).toArray(String[]::new)));
+        statement.setArray(2, connection.createArrayOf("float8", subscriptions.stream().map(s -> s.getLocation().getLatitude()).toArray(Double[]::new)));
+        statement.setArray(3, connection.createArrayOf("float8", subscriptions.stream().map(s -> s.getLocation().getLongitude()).toArray(Double[]::new)));
+        statement.setArray(4, connection.createArrayOf("varchar", subscriptions.stream().map(s -> s.getForecastedParameter().getName()).toArray(String[]::new)));
+        statement.setArray(5, connection.createArrayOf("varchar", subscriptions.stream().map(Subscription::getCustomerId).toArray(String[]::new)));
     }
 
     @SuppressWarnings("unchecked")
@@ -27,6 +122,45 @@ public class SubscriptionDAO extends AbstractDAO<Subscription> {
         return subscriptionList;
     }
 
+    @SuppressWarnings("unchecked")
+    public List<Subscription> findAllByModelNameWithin(String modelName, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelNameWithin");
+        query.setParameter("model_name", modelName);
+        query.setParameter("min_latitude", minLatitude);
+        query.setParameter("max_latitude", maxLatitude);
+        query.setParameter("min_longitude", minLongitude);
+        query.setParameter("max_longitude", maxLongitude);
+        List<Subscription> subscriptionList = (List<Subscription>)query.getResultList();
+        return subscriptionList;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Subscription> findPage(int limit) {
+        Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getPage");
+        query.setMaxResults(limit);
+        List<Subscription> subscriptionList = (List<Subscription>)query.getResultList();
+        return subscriptionList;
+    }
+
+    // Returns up to limit subscriptions that follow the given key in (model name, latitude, longitude, forecasted
+    // parameter name, customer ID) order.
+    @SuppressWarnings("unchecked")
+    public List<Subscription> findPageAfter(String modelName, double latitude, double longitude, String forecastedParameterName, String customerId, int limit) {
+        Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getPageAfter");
+        query.setParameter("model_name", modelName);
+        query.setParameter("latitude", latitude);
+        query.setParameter("longitude", longitude);
+        query.setParameter("forecasted_parameter_name", forecastedParameterName);
+        query.setParameter("customer_id", customerId);
+        query.setMaxResults(limit);
+        List<Subscription> subscriptionList = (List<Subscription>)query.getResultList();
+        return subscriptionList;
+    }
+
+    public void scrollAll(Consumer<Subscription> consumer) {
+        QueryScroller.scroll(currentSession(), namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAll"), consumer);
+    }
+
     public List<Subscription> findAllByModelName(String modelName) {
         Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelName");
         query.setParameter("model_name", modelName);
@@ -34,6 +168,14 @@ public class SubscriptionDAO extends AbstractDAO<Subscription> {
         return subscriptionList;
     }
 
+    @SuppressWarnings("unchecked")
+    public List<Subscription> findAllByCustomerId(String customerId) {
+        Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByCustomerId");
+        query.setParameter("customer_id", customerId);
+        List<Subscription> subscriptionList = (List<Subscription>)query.getResultList();
+        return subscriptionList;
+    }
+
     public List<Subscription> findAllByModelNameAndLocation(String modelName, Double latitude, Double longitude) {
         Query query = namedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelNameAndLocation");
         query.setParameter("model_name", modelName);
@@ -53,15 +195,115 @@ public class SubscriptionDAO extends AbstractDAO<Subscription> {
         return Optional.empty();
     }*/
 
-    public Optional<Subscription> delete(Subscription.SubscriptionId id) {
-        Subscription persistedSubscription = get(id);
+    // Blocks until no other transaction changes the subscriptions of the customer as a whole, the lock is held until the
+    // end of the transaction.
+    public void lockCustomer(String customerId) {
+        currentSession().doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(LOCK_CUSTOMER)) {
+                statement.setString(1, customerId);
+                statement.executeQuery().close();
+            }
+        });
+    }
 
-        if (persistedSubscription != null) {
-            Session currentSession = currentSession();
-            currentSession.delete(persistedSubscription);
-            return Optional.of(persistedSubscription);
+    // Deletes the subscription in a single statement. The returned subscription is not attached to the session.
+    public Optional<Subscription> delete(String modelName, double latitude, double longitude, String forecastedParameterName, String customerId) {
+        return currentSession().doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                statement.setString(1, modelName);
+                statement.setDouble(2, latitude);
+                statement.setDouble(3, longitude);
+                statement.setString(4, forecastedParameterName);
+                statement.setString(5, customerId);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next())
+                        return Optional.empty();
+                    return Optional.of(toSubscription(modelName, latitude, longitude, forecastedParameterName, customerId, resultSet.getDouble(1)));
+                }
+            }
+        });
+    }
+
+    // Deletes the given subscriptions of the customer in a single statement, the customer IDs of the given subscriptions
+    // are ignored. Returns the deleted subscriptions, they are not attached to the session.
+    public List<Subscription> deleteAll(String customerId, Collection<Subscription> subscriptions) {
+        int size = subscriptions.size();
+        String[] modelNames = new String[size];
+        Double[] latitudes = new Double[size];
+        Double[] longitudes = new Double[size];
+        String[] forecastedParameterNames = new String[size];
+        int i = 0;
+        for (Subscription subscription : subscriptions) {
+            modelNames[i] = subscription.getModel().getName();
+            latitudes[i] = subscription.getLocation().getLatitude();
+            longitudes[i] = subscription.getLocation().getLongitude();
+            forecastedParameterNames[i] = subscription.getForecastedParameter().getName();
+            i++;
         }
-        return Optional.empty();
+
+        return currentSession().doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_ALL_OF_CUSTOMER)) {
+                statement.setArray(1, connection.createArrayOf("varchar", modelNames));
+                statement.setArray(2, connection.createArrayOf("float8", latitudes));
+                statement.setArray(3, connection.createArrayOf("float8", longitudes));
+                statement.setArray(4, connection.createArrayOf("varchar", forecastedParameterNames));
+                statement.setString(5, customerId);
+                return toSubscriptionList(statement, customerId);
+            }
+        });
+    }
+
+    // Deletes all the subscriptions of the customer in a single statement. Returns the deleted subscriptions, they are
+    // not attached to the session.
+    public List<Subscription> deleteAllByCustomerId(String customerId) {
+        return currentSession().doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_ALL_BY_CUSTOMER_ID)) {
+                statement.setString(1, customerId);
+                return toSubscriptionList(statement, customerId);
+            }
+        });
+    }
+
+    // Reads (model_name, latitude, longitude, forecasted_parameter_name, elevation) rows.
+    private static List<Subscription> toSubscriptionList(PreparedStatement statement, String customerId) throws SQLException {
+        List<Subscription> subscriptionList = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                subscriptionList.add(toSubscription(resultSet.getString(1), resultSet.getDouble(2), resultSet.getDouble(3),
+                        resultSet.getString(4), customerId, resultSet.getDouble(5)));
+            }
+        }
+        return subscriptionList;
+    }
+
+    // Reads a (model_name, latitude, longitude, forecasted_parameter_name, customer_id, elevation) row.
+    private static Subscription toSubscription(ResultSet resultSet) throws SQLException {
+        return toSubscription(resultSet.getString(1), resultSet.getDouble(2), resultSet.getDouble(3),
+                resultSet.getString(4), resultSet.getString(5), resultSet.getDouble(6));
+    }
+
+    private static List<Object> key(Subscription subscription) {
+        return Arrays.asList(subscription.getModel().getName(), subscription.getLocation().getLatitude(),
+                subscription.getLocation().getLongitude(), subscription.getForecastedParameter().getName(), subscription.getCustomerId());
+    }
+
+    private static Subscription toSubscription(String modelName, double latitude, double longitude, String forecastedParameterName, String customerId, double elevation) {
+        Model model = new Model();
+        model.setName(modelName);
+        ForecastedParameter forecastedParameter = new ForecastedParameter();
+        forecastedParameter.setName(forecastedParameterName);
+        Location location = new Location();
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+
+        Subscription subscription = new Subscription();
+        subscription.setModel(model);
+        subscription.setForecastedParameter(forecastedParameter);
+        subscription.setLocation(location);
+        subscription.setCustomerId(customerId);
+        subscription.setElevation(elevation);
+        return subscription;
     }
 
 }
@@ -0,0 +1,49 @@
+package com.cgs.jt.rwis.metaservice.db.entity;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+
+// Version of the data of a table (e.g. "subscriptions") or of the rows of a table that belong to a model (e.g.
+// "subscriptions/ALADIN"). Only the triggers of the tables change the versions (see migrations.xml), in the transaction
+// that changes the data.
+@Entity
+@Immutable
+@Table(name = "data_version")
+@NamedQueries(
+        {
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.DataVersion.getVersionsByName",
+                        query = "SELECT d.name, d.version FROM DataVersion d WHERE d.name IN (:names)")
+        })
+public class DataVersion {
+    @Id
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return "DataVersion{" +
+                "name='" + name + '\'' +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -1,5 +1,8 @@
 package com.cgs.jt.rwis.metaservice.db.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -7,10 +10,13 @@ import java.util.List;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "forecasted_parameter")
 @NamedQueries(
         {
-                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.ForecastedParameter.getAll", query = "SELECT p FROM ForecastedParameter p"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.ForecastedParameter.getAll", query = "SELECT p FROM ForecastedParameter p",
+                        hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
         })
 public class ForecastedParameter {
     @Id
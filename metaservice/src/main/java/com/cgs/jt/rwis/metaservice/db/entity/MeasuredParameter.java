@@ -1,13 +1,19 @@
 package com.cgs.jt.rwis.metaservice.db.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.util.*;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "measured_parameter")
 @NamedQueries(
         {
-                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.MeasuredParameter.getAll", query = "SELECT p FROM MeasuredParameter p"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.MeasuredParameter.getAll", query = "SELECT p FROM MeasuredParameter p",
+                        hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
         })
 public class MeasuredParameter {
     @Id
@@ -1,15 +1,32 @@
 package com.cgs.jt.rwis.metaservice.db.entity;
 
+import org.hibernate.annotations.ColumnTransformer;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.Objects;
 
 @Entity
 @IdClass(MetroConfig.MetroConfigId.class)
-@Table(name = "metro_config")
+@Table(name = "metro_config", indexes = {
+        @Index(columnList = "model_name,latitude,longitude", name = "metro_config_keyset_idx")})
+// The (eager) associations are fetch-joined, otherwise loading N rows issues an extra select per distinct association.
 @NamedQueries(
         {
-                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getAll", query = "SELECT m FROM MetroConfig m")
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getAll", query = "SELECT m FROM MetroConfig m JOIN FETCH m.model JOIN FETCH m.location"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getAllByModelName", query = "SELECT m FROM MetroConfig m JOIN FETCH m.model JOIN FETCH m.location " +
+                        "WHERE m.model.name = :model_name"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getAllByModelNameWithin", query = "SELECT m FROM MetroConfig m JOIN FETCH m.model JOIN FETCH m.location " +
+                        "WHERE m.model.name = :model_name AND m.location.latitude BETWEEN :min_latitude AND :max_latitude " +
+                        "AND m.location.longitude BETWEEN :min_longitude AND :max_longitude"),
+                // Keyset pagination over (model_name, latitude, longitude). The leading ">=" lets the index range scan
+                // start at the cursor, the OR chain then skips the rows up to and including it.
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getPage", query = "SELECT m FROM MetroConfig m JOIN FETCH m.model JOIN FETCH m.location " +
+                        "ORDER BY m.model.name, m.location.latitude, m.location.longitude"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getPageAfter", query = "SELECT m FROM MetroConfig m JOIN FETCH m.model JOIN FETCH m.location " +
+                        "WHERE m.model.name >= :model_name AND (m.model.name > :model_name " +
+                        "OR m.location.latitude > :latitude OR (m.location.latitude = :latitude AND m.location.longitude > :longitude)) " +
+                        "ORDER BY m.model.name, m.location.latitude, m.location.longitude")
         })
 public class MetroConfig {
     // Primary key class
@@ -54,7 +71,9 @@ public class MetroConfig {
     }, foreignKey=@ForeignKey(name = "location_fk"))
     private Location location;
 
-    @Column(name = "config")
+    // Stored as JSONB, the JDBC driver sends strings as VARCHAR so the value needs a cast.
+    @Column(name = "config", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "?::jsonb")
     private String config;
 
 
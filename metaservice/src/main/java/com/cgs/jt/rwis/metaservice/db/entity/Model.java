@@ -1,14 +1,24 @@
 package com.cgs.jt.rwis.metaservice.db.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "model")
 @NamedQueries(
         {
-                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Model.getAll", query = "SELECT m FROM Model m")
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Model.getAll", query = "SELECT m FROM Model m",
+                        hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
+                // Not cached, so models deleted through other instances are seen.
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Model.countByName", query = "SELECT count(m) FROM Model m WHERE m.name = :name"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Model.getPage", query = "SELECT m FROM Model m ORDER BY m.name"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Model.getPageAfter", query = "SELECT m FROM Model m WHERE m.name > :name ORDER BY m.name")
         })
 public class Model {
     @Id
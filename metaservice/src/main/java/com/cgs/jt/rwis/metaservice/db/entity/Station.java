@@ -1,15 +1,26 @@
 package com.cgs.jt.rwis.metaservice.db.entity;
 
+import org.hibernate.annotations.BatchSize;
+
 import javax.persistence.*;
 import java.util.Set;
 
 @Entity
-@Table(name = "station")
+@Table(name = "station", indexes = {
+        @Index(columnList = "latitude,longitude", name = "station_location_idx")})
 @NamedQueries(
         {
-                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Station.getAll", query = "SELECT s FROM Station s")
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Station.getAll", query = "SELECT s FROM Station s"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Station.getWithin", query = "SELECT s FROM Station s " +
+                        "WHERE s.latitude BETWEEN :min_latitude AND :max_latitude AND s.longitude BETWEEN :min_longitude AND :max_longitude"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Station.getPage", query = "SELECT s FROM Station s ORDER BY s.id"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Station.getPageAfter", query = "SELECT s FROM Station s WHERE s.id > :id ORDER BY s.id")
         })
 public class Station {
+    // The lazy collections of up to this many stations in the session are loaded with one query, instead of one query
+    // per station.
+    public static final int FETCH_BATCH_SIZE = 100;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
@@ -30,9 +41,11 @@ public class Station {
     protected String costumerId;
 
     @OneToMany(targetEntity = ParameterOnStation.class, mappedBy = "station")
+    @BatchSize(size = FETCH_BATCH_SIZE)
     private Set<ParameterOnStation> parameterOnStationSet;
 
     @OneToMany(targetEntity = BaseCanSeeStation.class, mappedBy = "station")
+    @BatchSize(size = FETCH_BATCH_SIZE)
     private Set<BaseCanSeeStation> baseCanSeeStationSet;
 
     public Integer getId() {
@@ -8,13 +8,33 @@ import java.util.Objects;
 @IdClass(Subscription.SubscriptionId.class)
 @Table(name = "subscription", indexes = {
         @Index(columnList = "model_name", name = "model_idx"),
-        @Index(columnList = "model_name,latitude,longitude", name = "model_location_idx")})
+        @Index(columnList = "model_name,latitude,longitude", name = "model_location_idx"),
+        @Index(columnList = "model_name,latitude,longitude,forecasted_parameter_name,customer_id", name = "subscription_keyset_idx"),
+        @Index(columnList = "customer_id", name = "subscription_customer_idx")})
+// The (eager) associations are fetch-joined, otherwise loading N rows issues an extra select per distinct association.
 @NamedQueries(
         {
-                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAll", query = "SELECT s FROM Subscription s"),
-                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelName", query = "SELECT s FROM Subscription s WHERE s.model.name = :model_name"),
-                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelNameAndLocation", query = "SELECT s FROM Subscription s " +
-                        "WHERE s.model.name = :model_name AND s.location.latitude = :latitude AND s.location.longitude = :longitude")
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAll", query = "SELECT s FROM Subscription s JOIN FETCH s.model JOIN FETCH s.forecastedParameter JOIN FETCH s.location"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelName", query = "SELECT s FROM Subscription s JOIN FETCH s.model JOIN FETCH s.forecastedParameter JOIN FETCH s.location WHERE s.model.name = :model_name"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByCustomerId", query = "SELECT s FROM Subscription s JOIN FETCH s.model JOIN FETCH s.forecastedParameter JOIN FETCH s.location WHERE s.customerId = :customer_id"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelNameAndLocation", query = "SELECT s FROM Subscription s JOIN FETCH s.model JOIN FETCH s.forecastedParameter JOIN FETCH s.location " +
+                        "WHERE s.model.name = :model_name AND s.location.latitude = :latitude AND s.location.longitude = :longitude"),
+                // Range on latitude (and filter on longitude) within subscription_keyset_idx.
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelNameWithin", query = "SELECT s FROM Subscription s JOIN FETCH s.model JOIN FETCH s.forecastedParameter JOIN FETCH s.location " +
+                        "WHERE s.model.name = :model_name AND s.location.latitude BETWEEN :min_latitude AND :max_latitude " +
+                        "AND s.location.longitude BETWEEN :min_longitude AND :max_longitude"),
+                // Keyset pagination over (model_name, latitude, longitude, forecasted_parameter_name, customer_id). The
+                // leading ">=" lets the index range scan start at the cursor, the OR chain then skips the rows up to and
+                // including it.
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getPage", query = "SELECT s FROM Subscription s JOIN FETCH s.model JOIN FETCH s.forecastedParameter JOIN FETCH s.location " +
+                        "ORDER BY s.model.name, s.location.latitude, s.location.longitude, s.forecastedParameter.name, s.customerId"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.Subscription.getPageAfter", query = "SELECT s FROM Subscription s JOIN FETCH s.model JOIN FETCH s.forecastedParameter JOIN FETCH s.location " +
+                        "WHERE s.model.name >= :model_name AND (s.model.name > :model_name " +
+                        "OR s.location.latitude > :latitude OR (s.location.latitude = :latitude " +
+                        "AND (s.location.longitude > :longitude OR (s.location.longitude = :longitude " +
+                        "AND (s.forecastedParameter.name > :forecasted_parameter_name OR (s.forecastedParameter.name = :forecasted_parameter_name " +
+                        "AND s.customerId > :customer_id)))))) " +
+                        "ORDER BY s.model.name, s.location.latitude, s.location.longitude, s.forecastedParameter.name, s.customerId")
         })
 public class Subscription {
     // Primary key class
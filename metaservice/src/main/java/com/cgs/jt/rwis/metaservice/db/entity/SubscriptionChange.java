@@ -0,0 +1,141 @@
+package com.cgs.jt.rwis.metaservice.db.entity;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+
+// A created or deleted subscription. Only the triggers of the subscription table write the changes (see
+// migrations.xml), in the transaction that changes the subscriptions, with the version of the subscriptions of that
+// transaction.
+@Entity
+@Immutable
+@Table(name = "subscription_change")
+@NamedQueries(
+        {
+                // In the order of the changes (all the changes of a statement get the same version and id order).
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange.getAllByModelNameBetween",
+                        query = "SELECT c FROM SubscriptionChange c WHERE c.modelName = :model_name " +
+                                "AND c.version > :since AND c.version <= :until ORDER BY c.version, c.id"),
+                @NamedQuery(name = "com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange.getAllBetween",
+                        query = "SELECT c FROM SubscriptionChange c WHERE c.version > :since AND c.version <= :until ORDER BY c.version, c.id")
+        })
+public class SubscriptionChange {
+    public static final String CREATED = "CREATED";
+    public static final String DELETED = "DELETED";
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private long id;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    // CREATED or DELETED
+    @Column(name = "type", nullable = false)
+    private String type;
+
+    @Column(name = "model_name", nullable = false)
+    private String modelName;
+
+    @Column(name = "latitude", nullable = false)
+    private double latitude;
+
+    @Column(name = "longitude", nullable = false)
+    private double longitude;
+
+    @Column(name = "forecasted_parameter_name", nullable = false)
+    private String forecastedParameterName;
+
+    @Column(name = "customer_id", nullable = false)
+    private String customerId;
+
+    @Column(name = "elevation", nullable = false)
+    private double elevation;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public void setModelName(String modelName) {
+        this.modelName = modelName;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public String getForecastedParameterName() {
+        return forecastedParameterName;
+    }
+
+    public void setForecastedParameterName(String forecastedParameterName) {
+        this.forecastedParameterName = forecastedParameterName;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public double getElevation() {
+        return elevation;
+    }
+
+    public void setElevation(double elevation) {
+        this.elevation = elevation;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionChange{" +
+                "id=" + id +
+                ", version=" + version +
+                ", type='" + type + '\'' +
+                ", modelName='" + modelName + '\'' +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
+                ", forecastedParameterName='" + forecastedParameterName + '\'' +
+                ", customerId='" + customerId + '\'' +
+                ", elevation=" + elevation +
+                '}';
+    }
+}
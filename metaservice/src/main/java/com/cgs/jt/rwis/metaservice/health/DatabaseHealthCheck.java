@@ -1,21 +1,82 @@
 package com.cgs.jt.rwis.metaservice.health;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.health.HealthCheck;
-import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.Duration;
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.DataSource;
 
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// Runs the validation query on a pooled connection and reports unhealthy when the database cannot be reached in time,
+// but also when it is still reachable and the pool is saturated (degraded): too many connections in use or a long wait
+// for a connection. The load balancer then drains the instance before its requests start timing out. The wait for a
+// connection and the query round-trip are recorded in the <name>.health.connection-wait and
+// <name>.health.round-trip timers.
 public class DatabaseHealthCheck extends HealthCheck {
-    private final DataSourceFactory dataSourceFactory;
+    private final DataSource dataSource;
+    private final Duration timeout;
+    private final double maxPoolUtilization;
+    private final Duration maxConnectionWait;
+    private final Timer connectionWait;
+    private final Timer roundTrip;
 
-    public DatabaseHealthCheck(DataSourceFactory dataSourceFactory) {
-        this.dataSourceFactory = dataSourceFactory;
+    public DatabaseHealthCheck(String name, DataSource dataSource, Duration timeout, double maxPoolUtilization, Duration maxConnectionWait, MetricRegistry metrics) {
+        this.dataSource = dataSource;
+        this.timeout = timeout;
+        this.maxPoolUtilization = maxPoolUtilization;
+        this.maxConnectionWait = maxConnectionWait;
+        this.connectionWait = metrics.timer(MetricRegistry.name(name, "health", "connection-wait"));
+        this.roundTrip = metrics.timer(MetricRegistry.name(name, "health", "round-trip"));
     }
 
     @Override
     protected Result check() throws Exception {
-        if (dataSourceFactory.getCheckConnectionOnConnect()) {
-            return Result.healthy();
-        } else {
-            return Result.unhealthy("Cannot connect to " + dataSourceFactory.getUrl());
+        // Read before the check takes a connection itself.
+        ConnectionPool pool = dataSource.getPool();
+        int active = pool == null ? 0 : pool.getActive();
+        int waiting = pool == null ? 0 : pool.getWaitCount();
+        double utilization = (double) active / dataSource.getMaxActive();
+
+        long waitNanos;
+        long roundTripNanos;
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            waitNanos = System.nanoTime() - start;
+            connectionWait.update(waitNanos, TimeUnit.NANOSECONDS);
+
+            long queryStart = System.nanoTime();
+            try (Statement statement = connection.createStatement()) {
+                // JDBC timeouts are in whole seconds.
+                statement.setQueryTimeout((int) Math.max(1, Math.ceil(timeout.toMilliseconds() / 1000.0)));
+                statement.execute(dataSource.getValidationQuery());
+            }
+            roundTripNanos = System.nanoTime() - queryStart;
+            roundTrip.update(roundTripNanos, TimeUnit.NANOSECONDS);
+        }
+
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        long roundTripMillis = TimeUnit.NANOSECONDS.toMillis(roundTripNanos);
+        ResultBuilder result = Result.builder()
+                .withDetail("connectionWaitMillis", waitMillis)
+                .withDetail("roundTripMillis", roundTripMillis)
+                .withDetail("activeConnections", active)
+                .withDetail("waitingThreads", waiting)
+                .withDetail("poolUtilization", utilization);
+
+        if (roundTripMillis > timeout.toMilliseconds()) {
+            return result.unhealthy().withMessage("Validation query took %d ms (timeout %s)", roundTripMillis, timeout).build();
+        }
+        if (utilization >= maxPoolUtilization) {
+            return result.unhealthy().withMessage("Degraded: %d of %d connections in use, %d threads waiting",
+                    active, dataSource.getMaxActive(), waiting).build();
+        }
+        if (waitMillis > maxConnectionWait.toMilliseconds()) {
+            return result.unhealthy().withMessage("Degraded: waited %d ms for a connection (threshold %s)", waitMillis, maxConnectionWait).build();
         }
+        return result.healthy().build();
     }
 }
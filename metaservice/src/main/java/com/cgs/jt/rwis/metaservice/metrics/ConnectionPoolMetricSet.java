@@ -0,0 +1,44 @@
+package com.cgs.jt.rwis.metaservice.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.RatioGauge;
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.DataSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Exposes how much of a (Tomcat JDBC) connection pool is in use. Dropwizard already reports the raw pool counters
+// (io.dropwizard.db.ManagedPooledDataSource.<bundle name>.active, idle, waiting, ...), but not against the configured
+// maximum. The pool is only created when the application starts, until then everything is 0.
+public class ConnectionPoolMetricSet implements MetricSet {
+    private final DataSource dataSource;
+
+    public ConnectionPoolMetricSet(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private int getActive() {
+        ConnectionPool pool = dataSource.getPool();
+        return pool == null ? 0 : pool.getActive();
+    }
+
+    private int getMaxSize() {
+        return dataSource.getMaxActive();
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> gauges = new HashMap<>();
+        gauges.put("max-size", (Gauge<Integer>) this::getMaxSize);
+        gauges.put("utilization", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(getActive(), getMaxSize());
+            }
+        });
+        return gauges;
+    }
+}
@@ -0,0 +1,53 @@
+package com.cgs.jt.rwis.metaservice.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+// Exposes Hibernate second-level and query cache hit/miss counters as gauges. Besides the totals, counters are
+// reported per cached entity region. Enables Hibernate statistics, which are off by default.
+public class HibernateCacheMetricSet implements MetricSet {
+    private final Statistics statistics;
+    private final Class<?>[] cachedEntities;
+
+    public HibernateCacheMetricSet(SessionFactory sessionFactory, Class<?>... cachedEntities) {
+        this.statistics = sessionFactory.getStatistics();
+        this.statistics.setStatisticsEnabled(true);
+        this.cachedEntities = cachedEntities;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> gauges = new HashMap<>();
+        gauges.put("second-level.hits", (Gauge<Long>) statistics::getSecondLevelCacheHitCount);
+        gauges.put("second-level.misses", (Gauge<Long>) statistics::getSecondLevelCacheMissCount);
+        gauges.put("second-level.puts", (Gauge<Long>) statistics::getSecondLevelCachePutCount);
+        gauges.put("query.hits", (Gauge<Long>) statistics::getQueryCacheHitCount);
+        gauges.put("query.misses", (Gauge<Long>) statistics::getQueryCacheMissCount);
+        gauges.put("query.puts", (Gauge<Long>) statistics::getQueryCachePutCount);
+
+        for (Class<?> entity : cachedEntities) {
+            // Entity regions are named after the entity class unless a region is set in @Cache.
+            String region = entity.getName();
+            gauges.put(MetricRegistry.name(entity.getSimpleName(), "hits"), regionGauge(region, CacheRegionStatistics::getHitCount));
+            gauges.put(MetricRegistry.name(entity.getSimpleName(), "misses"), regionGauge(region, CacheRegionStatistics::getMissCount));
+            gauges.put(MetricRegistry.name(entity.getSimpleName(), "size"), regionGauge(region, CacheRegionStatistics::getElementCountInMemory));
+        }
+        return gauges;
+    }
+
+    private Gauge<Long> regionGauge(String region, ToLongFunction<CacheRegionStatistics> value) {
+        return () -> {
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+            return regionStatistics == null ? 0L : value.applyAsLong(regionStatistics);
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.cgs.jt.rwis.metaservice.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Exposes the Hibernate session factory statistics (queries, entity and collection operations, sessions, connections)
+// as gauges. Cache counters are reported by HibernateCacheMetricSet. Enables Hibernate statistics, which are off by
+// default.
+public class HibernateStatisticsMetricSet implements MetricSet {
+    private final Statistics statistics;
+
+    public HibernateStatisticsMetricSet(SessionFactory sessionFactory) {
+        this.statistics = sessionFactory.getStatistics();
+        this.statistics.setStatisticsEnabled(true);
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> gauges = new HashMap<>();
+        gauges.put("queries.executed", (Gauge<Long>) statistics::getQueryExecutionCount);
+        gauges.put("queries.max-time", (Gauge<Long>) statistics::getQueryExecutionMaxTime);
+        gauges.put("queries.slowest", (Gauge<String>) statistics::getQueryExecutionMaxTimeQueryString);
+        gauges.put("statements.prepared", (Gauge<Long>) statistics::getPrepareStatementCount);
+        gauges.put("entities.loaded", (Gauge<Long>) statistics::getEntityLoadCount);
+        gauges.put("entities.fetched", (Gauge<Long>) statistics::getEntityFetchCount);
+        gauges.put("entities.inserted", (Gauge<Long>) statistics::getEntityInsertCount);
+        gauges.put("entities.updated", (Gauge<Long>) statistics::getEntityUpdateCount);
+        gauges.put("entities.deleted", (Gauge<Long>) statistics::getEntityDeleteCount);
+        gauges.put("collections.loaded", (Gauge<Long>) statistics::getCollectionLoadCount);
+        gauges.put("collections.fetched", (Gauge<Long>) statistics::getCollectionFetchCount);
+        gauges.put("sessions.opened", (Gauge<Long>) statistics::getSessionOpenCount);
+        gauges.put("transactions.successful", (Gauge<Long>) statistics::getSuccessfulTransactionCount);
+        gauges.put("connections.obtained", (Gauge<Long>) statistics::getConnectCount);
+        return gauges;
+    }
+}
@@ -0,0 +1,45 @@
+package com.cgs.jt.rwis.metaservice.resources;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Resumes asynchronous (@Suspended AsyncResponse) responses when the database work of the DatabaseExecutor completes.
+// The result may be shared by coalesced requests, so every request builds its own response from it. A response that
+// is not resumed within the timeout is answered with 503, the work itself is not cancelled.
+final class AsyncResponses {
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private AsyncResponses() {
+    }
+
+    static <T> void resume(AsyncResponse asyncResponse, CompletableFuture<T> result, Function<T, Response> response) {
+        asyncResponse.setTimeoutHandler(timedOut -> timedOut.resume(Response
+                .status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .build()));
+        asyncResponse.setTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        result.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                // Mapped to a response by the exception mappers, like exceptions of synchronous resources.
+                asyncResponse.resume(unwrap(throwable));
+                return;
+            }
+
+            try {
+                asyncResponse.resume(response.apply(value));
+            } catch (Throwable e) {
+                asyncResponse.resume(e);
+            }
+        });
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+}
@@ -0,0 +1,21 @@
+package com.cgs.jt.rwis.metaservice.resources;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+
+// Times asynchronous (@Suspended AsyncResponse) resource methods from the start of the method until their response is
+// resumed and written. @Timed cannot be used for them, it stops when the method returns. The timers are named like the
+// @Timed ones (resource class and method name).
+final class AsyncTimers {
+    private AsyncTimers() {
+    }
+
+    // Call at the start of the method, before the response can be resumed.
+    static void time(MetricRegistry metrics, Class<?> resource, String method, AsyncResponse asyncResponse) {
+        Timer.Context context = metrics.timer(MetricRegistry.name(resource, method)).time();
+        asyncResponse.register((CompletionCallback) throwable -> context.stop());
+    }
+}
@@ -0,0 +1,58 @@
+package com.cgs.jt.rwis.metaservice.resources;
+
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// Conditional GET: responses get a strong ETag made of the version of their data (see DataVersionService) and of the
+// negotiated representation, and a request whose If-None-Match contains the current tag is answered with 304 Not
+// Modified without building the response. JSON and Smile representations have different tags, hence Vary: Accept.
+class ConditionalResponses {
+    private static final List<Variant> VARIANTS = Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE, SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE).build();
+
+    private ConditionalResponses() {
+    }
+
+    static EntityTag entityTag(Request request, String version) {
+        Variant variant = request.selectVariant(VARIANTS);
+        return entityTag(version, variant != null ? variant.getMediaType() : MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    static EntityTag entityTag(Request request, long version) {
+        return entityTag(request, String.valueOf(version));
+    }
+
+    // Streamed responses are always JSON.
+    static EntityTag jsonEntityTag(String version) {
+        return entityTag(version, MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    private static Optional<Response> notModified(Request request, EntityTag entityTag) {
+        return Optional.ofNullable(request.evaluatePreconditions(entityTag))
+                .map(builder -> builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build());
+    }
+
+    private static Response tagged(Response response, EntityTag entityTag) {
+        return Response.fromResponse(response)
+                .tag(entityTag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .build();
+    }
+
+    // Only builds the response if the client does not have it yet.
+    static Response evaluate(Request request, EntityTag entityTag, Supplier<Response> response) {
+        return notModified(request, entityTag).orElseGet(() -> tagged(response.get(), entityTag));
+    }
+
+    private static EntityTag entityTag(String version, MediaType mediaType) {
+        return new EntityTag(version + "-" + mediaType.getSubtype());
+    }
+}
@@ -0,0 +1,37 @@
+package com.cgs.jt.rwis.metaservice.resources;
+
+import com.cgs.jt.rwis.metaservice.core.EventPublisher;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+@Path("events")
+public class EventResource {
+
+    @Inject
+    private EventPublisher eventPublisher;
+
+    @Operation(summary = "Subscribe to changes",
+            description = "Server-Sent Events stream of committed changes: subscriptions-created and subscriptions-deleted " +
+                    "(list of subscriptions, event id is the subscriptions version), metroconfig-created and metroconfig-deleted (METRO config). " +
+                    "Subscription events cover the changes made through every instance of the service and directly in the database, " +
+                    "published up to eventPollInterval after the commit. METRO config events only cover the changes made through this " +
+                    "instance.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Event stream"),
+                    @ApiResponse(responseCode = "500", description = "Server error")
+            })
+    @GET
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void subscribe(@Context Sse sse, @Context SseEventSink eventSink) {
+        eventPublisher.register(sse, eventSink);
+    }
+}
@@ -1,7 +1,11 @@
 package com.cgs.jt.rwis.metaservice.resources;
 
 import com.cgs.jt.rwis.metaservice.api.ForecastedParameterDTO;
+import com.cgs.jt.rwis.metaservice.core.DataVersionService;
 import com.cgs.jt.rwis.metaservice.core.ForecastedParameterService;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,18 +18,23 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import javax.inject.Inject;
 import javax.validation.Valid;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import java.util.List;
 
-@Consumes(MediaType.APPLICATION_JSON)
-@Produces(MediaType.APPLICATION_JSON)
+@Consumes({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+@Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
 @Path("forecastedparameters")
 public class ForecastedParameterResource {
 
     @Inject
     private ForecastedParameterService parameterService;
 
+    @Inject
+    private DataVersionService dataVersionService;
+
     // CREATE
     @Operation(summary = "Create forecasted parameter",
             description = "Create a new forecasted parameter",
@@ -34,6 +43,8 @@ public class ForecastedParameterResource {
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
     @POST
+    @Timed
+    @ExceptionMetered
     @UnitOfWork
     public Response createParameter(@RequestBody(description = "New parameter object", required = true,
             content = @Content(schema = @Schema(implementation = ForecastedParameterDTO.class))) @Valid ForecastedParameterDTO parameterDTO) {
@@ -52,17 +63,22 @@ public class ForecastedParameterResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = ForecastedParameterDTO.class)),
                             description = "List of all the forecasted parameters", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned forecasted parameters")}),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
-    public Response getParameters() {
-        List<ForecastedParameterDTO> parameterList = parameterService.getParameters();
+    @Timed
+    @ExceptionMetered
+    public Response getParameters(@Context Request request) {
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, dataVersionService.getVersion(DataVersionService.FORECASTED_PARAMETERS)), () -> {
+            List<ForecastedParameterDTO> parameterList = parameterService.getParameters();
 
-        return Response
-                .ok(parameterList)
-                .header("X-Total-Count", parameterList.size())
-                .build();
+            return Response
+                    .ok(parameterList)
+                    .header("X-Total-Count", parameterList.size())
+                    .build();
+        });
     }
 
     @Operation(summary = "Get forecasted parameter by name",
@@ -70,15 +86,21 @@ public class ForecastedParameterResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = ForecastedParameterDTO.class)), description = "Forecasted parameter with appropriate name"),
                     @ApiResponse(responseCode = "404", description = "Parameter not found"),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
+    @Timed
+    @ExceptionMetered
     @Path("{name}")
     public Response getParameter(
-            @Parameter(description = "Name of the parameter to be returned", schema = @Schema(type = "string", description = "Name of parameter to be returned"), required = true) @PathParam("name") String name) {
-        ForecastedParameterDTO parameterDTO = parameterService.getParameter(name);
-        return Response.ok(parameterDTO).build();
+            @Parameter(description = "Name of the parameter to be returned", schema = @Schema(type = "string", description = "Name of parameter to be returned"), required = true) @PathParam("name") String name,
+            @Context Request request) {
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, dataVersionService.getVersion(DataVersionService.FORECASTED_PARAMETERS)), () -> {
+            ForecastedParameterDTO parameterDTO = parameterService.getParameter(name);
+            return Response.ok(parameterDTO).build();
+        });
     }
 
 
@@ -102,6 +124,8 @@ public class ForecastedParameterResource {
             })
     @UnitOfWork
     @DELETE
+    @Timed
+    @ExceptionMetered
     @Path("{name}")
     public Response deleteParameter(@Parameter(
             description = "Name of the parameter to be deleted", schema = @Schema(type = "string", description = "Name of parameter to be deleted"), required = true) @PathParam("name") String name) {
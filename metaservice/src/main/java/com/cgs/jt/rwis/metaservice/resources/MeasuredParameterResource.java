@@ -1,7 +1,11 @@
 package com.cgs.jt.rwis.metaservice.resources;
 
 import com.cgs.jt.rwis.metaservice.api.MeasuredParameterDTO;
+import com.cgs.jt.rwis.metaservice.core.DataVersionService;
 import com.cgs.jt.rwis.metaservice.core.MeasuredParameterService;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,18 +18,23 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import javax.inject.Inject;
 import javax.validation.Valid;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import java.util.List;
 
-@Consumes(MediaType.APPLICATION_JSON)
-@Produces(MediaType.APPLICATION_JSON)
+@Consumes({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+@Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
 @Path("measuredparameters")
 public class MeasuredParameterResource {
 
     @Inject
     private MeasuredParameterService parameterService;
 
+    @Inject
+    private DataVersionService dataVersionService;
+
     // CREATE
     @Operation(summary = "Create measured parameter",
             description = "Create a new measured parameter",
@@ -34,6 +43,8 @@ public class MeasuredParameterResource {
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
     @POST
+    @Timed
+    @ExceptionMetered
     @UnitOfWork
     public Response createParameter(@RequestBody(description = "New parameter object", required = true,
             content = @Content(schema = @Schema(implementation = MeasuredParameterDTO.class))) @Valid MeasuredParameterDTO parameterDTO) {
@@ -52,17 +63,22 @@ public class MeasuredParameterResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = MeasuredParameterDTO.class)),
                             description = "List of all the measured parameters", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned measured parameters")}),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
-    public Response getParameters() {
-        List<MeasuredParameterDTO> parameterList = parameterService.getParameters();
+    @Timed
+    @ExceptionMetered
+    public Response getParameters(@Context Request request) {
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, dataVersionService.getVersion(DataVersionService.MEASURED_PARAMETERS)), () -> {
+            List<MeasuredParameterDTO> parameterList = parameterService.getParameters();
 
-        return Response
-                .ok(parameterList)
-                .header("X-Total-Count", parameterList.size())
-                .build();
+            return Response
+                    .ok(parameterList)
+                    .header("X-Total-Count", parameterList.size())
+                    .build();
+        });
     }
 
     @Operation(summary = "Get measured parameter by name",
@@ -70,15 +86,21 @@ public class MeasuredParameterResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = MeasuredParameterDTO.class)), description = "Measured parameter with appropriate name"),
                     @ApiResponse(responseCode = "404", description = "Parameter not found"),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
+    @Timed
+    @ExceptionMetered
     @Path("{name}")
     public Response getParameter(
-            @Parameter(description = "Name of the parameter to be returned", schema = @Schema(type = "string", description = "Name of parameter to be returned"), required = true) @PathParam("name") String name) {
-        MeasuredParameterDTO parameterDTO = parameterService.getParameter(name);
-        return Response.ok(parameterDTO).build();
+            @Parameter(description = "Name of the parameter to be returned", schema = @Schema(type = "string", description = "Name of parameter to be returned"), required = true) @PathParam("name") String name,
+            @Context Request request) {
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, dataVersionService.getVersion(DataVersionService.MEASURED_PARAMETERS)), () -> {
+            MeasuredParameterDTO parameterDTO = parameterService.getParameter(name);
+            return Response.ok(parameterDTO).build();
+        });
     }
 
 
@@ -102,6 +124,8 @@ public class MeasuredParameterResource {
             })
     @UnitOfWork
     @DELETE
+    @Timed
+    @ExceptionMetered
     @Path("{name}")
     public Response deleteParameter(@Parameter(
             description = "Name of the parameter to be deleted", schema = @Schema(type = "string", description = "Name of parameter to be deleted"), required = true) @PathParam("name") String name) {
@@ -1,11 +1,23 @@
 package com.cgs.jt.rwis.metaservice.resources;
 
+import com.cgs.jt.rwis.metaservice.core.BoundingBox;
+import com.cgs.jt.rwis.metaservice.core.CreateResult;
+import com.cgs.jt.rwis.metaservice.core.DataVersionService;
+import com.cgs.jt.rwis.metaservice.core.JsonArrayStreamingOutput;
 import com.cgs.jt.rwis.metaservice.core.MetroConfigService;
+import com.cgs.jt.rwis.metaservice.core.Page;
 import com.cgs.jt.rwis.metro.MetroLocationDescription;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.ResponseMetered;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
@@ -13,34 +25,54 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import java.util.List;
 
-@Consumes(MediaType.APPLICATION_JSON)
-@Produces(MediaType.APPLICATION_JSON)
+@Consumes({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+@Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
 @Path("metroconfig")
 public class MetroConfigResource {
 
     @Inject
     private MetroConfigService metroConfigService;
 
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private MetricRegistry metrics;
+
+    @Inject
+    private DataVersionService dataVersionService;
+
     // CREATE
     @Operation(summary = "Create METRO config",
-            description = "Create a new METRO config for specific location",
+            description = "Create a new METRO config for specific location, creating a METRO config for a model and location that already has one changes nothing",
             responses = {
                     @ApiResponse(responseCode = "201", description = "METRO config created", headers = {@Header(schema = @Schema(type = "string"), name = "Location", description = "URL to a created model")}),
+                    @ApiResponse(responseCode = "200", description = "METRO config already exists, the stored one is returned", headers = {@Header(schema = @Schema(type = "string"), name = "Location", description = "URL to the model")}),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
     @POST
+    @Timed
+    @ExceptionMetered
     @UnitOfWork
     public Response createMetroConfig(@RequestBody(description = "New metroConfig model object", required = true, content = @Content(schema = @Schema(implementation = MetroLocationDescription.class))) @Valid MetroLocationDescription metroLocationDescription) {
-        MetroLocationDescription createdMetroLocationDescription = metroConfigService.createMetroConfig(metroLocationDescription);
+        CreateResult<MetroLocationDescription> createResult = metroConfigService.createMetroConfig(metroLocationDescription);
+        MetroLocationDescription createdMetroLocationDescription = createResult.getItem();
 
         return Response
                 .ok(createdMetroLocationDescription)
-                .status(Response.Status.CREATED)
+                .status(createResult.isCreated() ? Response.Status.CREATED : Response.Status.OK)
                 .header("Location", "/metroconfig/" + createdMetroLocationDescription.getForecastModelId() + "/" + createdMetroLocationDescription.getGeoLocation().getLatitude() + "/" + createdMetroLocationDescription.getGeoLocation().getLongitude())
                 .build();
     }
@@ -51,17 +83,65 @@ public class MetroConfigResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = MetroLocationDescription.class)),
                             description = "List of all the METRO configs", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned models")}),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
-    public Response getMetroConfigs() {
-        List<MetroLocationDescription> metroLocationDescriptionList = metroConfigService.getMetroConfigs();
+    @Timed
+    @ExceptionMetered
+    public Response getMetroConfigs(@Parameter(description = "If true, the list is streamed while it is read from the database (no X-Total-Count header)", schema = @Schema(type = "boolean")) @QueryParam("stream") boolean stream,
+                                    @Parameter(description = "Maximum number of returned METRO configs (enables pagination)", schema = @Schema(type = "integer", minimum = "1", maximum = "1000")) @QueryParam("limit") @Min(1) @Max(1000) Integer limit,
+                                    @Parameter(description = "Cursor from the next Link header of the previous page (enables pagination)", schema = @Schema(type = "string")) @QueryParam("after") String after,
+                                    @Context UriInfo uriInfo,
+                                    @Context Request request) {
+        String version = dataVersionService.getVersion(DataVersionService.METRO_CONFIGS);
+        if (stream) {
+            return ConditionalResponses.evaluate(request, ConditionalResponses.jsonEntityTag(version), () -> Response
+                    .ok(new JsonArrayStreamingOutput<>(objectMapper, metroConfigService::streamMetroConfigs))
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .build());
+        }
 
-        return Response
-                .ok(metroLocationDescriptionList)
-                .header("X-Total-Count", metroLocationDescriptionList.size())
-                .build();
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, version), () -> {
+            if (limit != null || after != null) {
+                Page<MetroLocationDescription> page = metroConfigService.getMetroConfigs(after, limit != null ? limit : PagedResponses.DEFAULT_LIMIT);
+                return PagedResponses.ok(page, uriInfo);
+            }
+
+            List<MetroLocationDescription> metroLocationDescriptionList = metroConfigService.getMetroConfigs();
+
+            return Response
+                    .ok(metroLocationDescriptionList)
+                    .header("X-Total-Count", metroLocationDescriptionList.size())
+                    .build();
+        });
+    }
+
+    @Operation(summary = "Get METRO configs for model",
+            description = "Get all the METRO configs for model (optionally only those inside the bounding box), streamed in one response",
+            responses = {
+                    @ApiResponse(responseCode = "200", content = @Content(array = @ArraySchema(schema = @Schema(implementation = MetroLocationDescription.class))),
+                            description = "List of all the METRO configs for model"),
+                    @ApiResponse(responseCode = "400", description = "Invalid bounding box"),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
+                    @ApiResponse(responseCode = "500", description = "Server error")
+            })
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
+    @GET
+    @Timed
+    @ExceptionMetered
+    @Path("{model}")
+    public Response getMetroConfigsForModel(@Parameter(description = "Name of the model for METRO configs", schema = @Schema(type = "string", description = "Name of the model for METRO configs to be returned"), required = true) @PathParam("model") String model,
+                                            @Parameter(description = "Bounding box as minLon,minLat,maxLon,maxLat", schema = @Schema(type = "string", example = "13.3,45.4,16.6,46.9")) @QueryParam("bbox") String bbox,
+                                            @Context Request request) {
+        BoundingBox boundingBox = bbox != null ? BoundingBox.parse(bbox) : null;
+
+        return ConditionalResponses.evaluate(request, ConditionalResponses.jsonEntityTag(String.valueOf(dataVersionService.getModelVersion(DataVersionService.METRO_CONFIGS, model))), () -> Response
+                .ok(new JsonArrayStreamingOutput<MetroLocationDescription>(objectMapper,
+                        consumer -> metroConfigService.streamMetroConfigsByModelName(model, boundingBox, consumer)))
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .build());
     }
 
     @Operation(summary = "Get METRO config by model name and location",
@@ -69,16 +149,25 @@ public class MetroConfigResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = MetroLocationDescription.class)), description = "Metro config model"),
                     @ApiResponse(responseCode = "404", description = "Metro config not found"),
-                    @ApiResponse(responseCode = "500", description = "Server error")
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
+                    @ApiResponse(responseCode = "500", description = "Server error"),
+                    @ApiResponse(responseCode = "503", description = "Server overloaded or no response within 30 s, retry later")
             })
-    @UnitOfWork
+    // Primary database: the result is put into the METRO config cache, which is invalidated when the primary commits. The
+    // ETag is the version the cached config was read at, so a cached config is answered with 304 without the database.
     @GET
+    @ResponseMetered
+    @ExceptionMetered
     @Path("{model}/{latitude}/{longitude}")
-    public Response getMetroConfigForModelAndLocation(@Parameter(description = "Name of the model for METRO config", schema = @Schema(type = "string", description = "Name of the model for METRO config to be returned"), required = true) @PathParam("model") String model,
-                                                      @Parameter(description = "Latitude location for METRO config", schema = @Schema(type = "double", description = "Latitude location for METRO config to be returned"), required = true) @PathParam("latitude") Double latitude,
-                                                      @Parameter(description = "Longitude location for METRO config", schema = @Schema(type = "double", description = "Longitude location for METRO config to be returned"), required = true) @PathParam("longitude") Double longitude) {
-        MetroLocationDescription metroLocationDescription = metroConfigService.getMetroConfigForModelAndLocation(model, latitude, longitude);
-        return Response.ok(metroLocationDescription).build();
+    public void getMetroConfigForModelAndLocation(@Parameter(description = "Name of the model for METRO config", schema = @Schema(type = "string", description = "Name of the model for METRO config to be returned"), required = true) @PathParam("model") String model,
+                                                  @Parameter(description = "Latitude location for METRO config", schema = @Schema(type = "double", description = "Latitude location for METRO config to be returned"), required = true) @PathParam("latitude") Double latitude,
+                                                  @Parameter(description = "Longitude location for METRO config", schema = @Schema(type = "double", description = "Longitude location for METRO config to be returned"), required = true) @PathParam("longitude") Double longitude,
+                                                  @Context Request request,
+                                                  @Suspended AsyncResponse asyncResponse) {
+        AsyncTimers.time(metrics, MetroConfigResource.class, "getMetroConfigForModelAndLocation", asyncResponse);
+        AsyncResponses.resume(asyncResponse, metroConfigService.getMetroConfigForModelAndLocation(model, latitude, longitude),
+                metroLocationDescription -> ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, metroLocationDescription.getVersion()),
+                        () -> Response.ok(metroLocationDescription.getValue()).build()));
     }
 
 
@@ -102,6 +191,8 @@ public class MetroConfigResource {
             })
     @UnitOfWork
     @DELETE
+    @Timed
+    @ExceptionMetered
     @Path("{model}/{latitude}/{longitude}")
     public Response deleteMetroConfigForModelAndLocation(@Parameter(description = "Name of the model for METRO config", schema = @Schema(type = "string", description = "Name of the model for METRO config to be returned"), required = true) @PathParam("model") String model,
                                 @Parameter(description = "Latitude location for METRO config", schema = @Schema(type = "double", description = "Latitude location for METRO config to be returned"), required = true) @PathParam("latitude") Double latitude,
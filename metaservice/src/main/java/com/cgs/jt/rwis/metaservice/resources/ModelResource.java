@@ -1,7 +1,12 @@
 package com.cgs.jt.rwis.metaservice.resources;
 
 import com.cgs.jt.rwis.metaservice.api.ModelDTO;
+import com.cgs.jt.rwis.metaservice.core.DataVersionService;
 import com.cgs.jt.rwis.metaservice.core.ModelService;
+import com.cgs.jt.rwis.metaservice.core.Page;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,19 +18,27 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import java.util.List;
 
-@Consumes(MediaType.APPLICATION_JSON)
-@Produces(MediaType.APPLICATION_JSON)
+@Consumes({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+@Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
 @Path("models")
 public class ModelResource {
 
     @Inject
     private ModelService modelService;
 
+    @Inject
+    private DataVersionService dataVersionService;
+
     // CREATE
     @Operation(summary = "Create forecast model",
             description = "Create a new model which will be used as a forecasting model",
@@ -34,6 +47,8 @@ public class ModelResource {
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
     @POST
+    @Timed
+    @ExceptionMetered
     @UnitOfWork
     public Response createModel(@RequestBody(description = "New forecasted model object", required = true, content = @Content(schema = @Schema(implementation = ModelDTO.class))) @Valid ModelDTO modelDTO) {
         ModelDTO createdModel = modelService.createModel(modelDTO);
@@ -51,17 +66,30 @@ public class ModelResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = ModelDTO.class)),
                             description = "List of all the models", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned models")}),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
-    public Response getModels() {
-        List<ModelDTO> modelDTOList = modelService.getModels();
+    @Timed
+    @ExceptionMetered
+    public Response getModels(@Parameter(description = "Maximum number of returned models (enables pagination)", schema = @Schema(type = "integer", minimum = "1", maximum = "1000")) @QueryParam("limit") @Min(1) @Max(1000) Integer limit,
+                              @Parameter(description = "Cursor from the next Link header of the previous page (enables pagination)", schema = @Schema(type = "string")) @QueryParam("after") String after,
+                              @Context UriInfo uriInfo,
+                              @Context Request request) {
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, dataVersionService.getVersion(DataVersionService.MODELS)), () -> {
+            if (limit != null || after != null) {
+                Page<ModelDTO> page = modelService.getModels(after, limit != null ? limit : PagedResponses.DEFAULT_LIMIT);
+                return PagedResponses.ok(page, uriInfo);
+            }
 
-        return Response
-                .ok(modelDTOList)
-                .header("X-Total-Count", modelDTOList.size())
-                .build();
+            List<ModelDTO> modelDTOList = modelService.getModels();
+
+            return Response
+                    .ok(modelDTOList)
+                    .header("X-Total-Count", modelDTOList.size())
+                    .build();
+        });
     }
 
     @Operation(summary = "Get model by name",
@@ -69,14 +97,20 @@ public class ModelResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = ModelDTO.class)), description = "Model with appropriate name"),
                     @ApiResponse(responseCode = "404", description = "Model not found"),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
+    @Timed
+    @ExceptionMetered
     @Path("{name}")
-    public Response getModel(@Parameter(description = "Name of the model to be returned", schema = @Schema(type = "string", description = "Name of model to be returned"), required = true) @PathParam("name") String name) {
-        ModelDTO modelDTO = modelService.getModel(name);
-        return Response.ok(modelDTO).build();
+    public Response getModel(@Parameter(description = "Name of the model to be returned", schema = @Schema(type = "string", description = "Name of model to be returned"), required = true) @PathParam("name") String name,
+                             @Context Request request) {
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, dataVersionService.getVersion(DataVersionService.MODELS)), () -> {
+            ModelDTO modelDTO = modelService.getModel(name);
+            return Response.ok(modelDTO).build();
+        });
     }
 
 
@@ -100,6 +134,8 @@ public class ModelResource {
             })
     @UnitOfWork
     @DELETE
+    @Timed
+    @ExceptionMetered
     @Path("{name}")
     public Response deleteModel(@Parameter(description = "Name of the model to be deleted", schema = @Schema(type = "string", description = "Name of model to be returned"), required = true) @PathParam("name") String name) {
         ModelDTO deletedModelDTO = modelService.deleteModel(name);
@@ -0,0 +1,25 @@
+package com.cgs.jt.rwis.metaservice.resources;
+
+import com.cgs.jt.rwis.metaservice.core.Page;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+// Builds responses for keyset-paginated collections: the page items, their count and a Link header (rel="next")
+// pointing to the next page, which is omitted on the last page.
+class PagedResponses {
+    static final int DEFAULT_LIMIT = 100;
+
+    private PagedResponses() {
+    }
+
+    static Response ok(Page<?> page, UriInfo uriInfo) {
+        Response.ResponseBuilder builder = Response
+                .ok(page.getItems())
+                .header("X-Total-Count", page.getItems().size());
+
+        page.getNextCursor().ifPresent(cursor -> builder.link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", cursor).build(), "next"));
+
+        return builder.build();
+    }
+}
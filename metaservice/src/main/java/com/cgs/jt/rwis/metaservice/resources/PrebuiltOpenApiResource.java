@@ -0,0 +1,71 @@
+package com.cgs.jt.rwis.metaservice.resources;
+
+import io.swagger.v3.oas.annotations.Hidden;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+// Serves the OpenAPI spec generated at build time (swagger-maven-plugin, see pom.xml), so the resource classes are not
+// scanned at runtime. Used in fast start mode. Like the scanning OpenApiResource it serves /openapi.json and
+// /openapi.yaml.
+@Hidden
+@Path("openapi.{type:json|yaml}")
+public class PrebuiltOpenApiResource {
+    public static final String SPEC = "/openapi.json";
+    public static final String YAML_SPEC = "/openapi.yaml";
+
+    private static final String APPLICATION_YAML = "application/yaml";
+
+    private final byte[] spec;
+    private final byte[] yamlSpec;
+
+    private PrebuiltOpenApiResource(byte[] spec, byte[] yamlSpec) {
+        this.spec = spec;
+        this.yamlSpec = yamlSpec;
+    }
+
+    // Empty if the spec was not generated (e.g. when the classes were not built with Maven).
+    public static Optional<PrebuiltOpenApiResource> fromClasspath() {
+        Optional<byte[]> spec = read(SPEC);
+        Optional<byte[]> yamlSpec = read(YAML_SPEC);
+        if (!spec.isPresent() || !yamlSpec.isPresent())
+            return Optional.empty();
+
+        return Optional.of(new PrebuiltOpenApiResource(spec.get(), yamlSpec.get()));
+    }
+
+    private static Optional<byte[]> read(String resource) {
+        try (InputStream in = PrebuiltOpenApiResource.class.getResourceAsStream(resource)) {
+            if (in == null)
+                return Optional.empty();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return Optional.of(out.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + resource, e);
+        }
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_YAML})
+    public Response getOpenApi(@PathParam("type") String type) {
+        if ("yaml".equals(type))
+            return Response.ok(yamlSpec, APPLICATION_YAML).build();
+
+        return Response.ok(spec, MediaType.APPLICATION_JSON).build();
+    }
+}
@@ -1,7 +1,15 @@
 package com.cgs.jt.rwis.metaservice.resources;
 
 import com.cgs.jt.rwis.metaservice.api.StationDTO;
+import com.cgs.jt.rwis.metaservice.core.DataVersionService;
+import com.cgs.jt.rwis.metaservice.core.JsonArrayStreamingOutput;
+import com.cgs.jt.rwis.metaservice.core.Page;
+import com.cgs.jt.rwis.metaservice.core.StationDetails;
 import com.cgs.jt.rwis.metaservice.core.StationService;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,19 +22,34 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import java.util.List;
 
-@Consumes(MediaType.APPLICATION_JSON)
-@Produces(MediaType.APPLICATION_JSON)
+@Consumes({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+@Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
 @Path("stations")
 public class StationResource {
 
     @Inject
     private StationService stationService;
 
+    @Inject
+    private DataVersionService dataVersionService;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
     // CREATE
     @Operation(summary = "Create station",
             description = "Create a new station",
@@ -35,6 +58,8 @@ public class StationResource {
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
     @POST
+    @Timed
+    @ExceptionMetered
     @UnitOfWork
     public Response createStation(@RequestBody(description = "New station model object", required = true, content = @Content(schema = @Schema(implementation = StationDTO.class))) @Valid StationDTO stationDTO) {
         StationDTO createdStation = stationService.createStation(stationDTO);
@@ -48,21 +73,74 @@ public class StationResource {
 
     // READ
     @Operation(summary = "Get stations",
-            description = "Get all the stations",
+            description = "Get all the stations with the nested collections selected by include, loaded in a bounded number of queries",
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = StationDTO.class)),
                             description = "List of all the stations", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned stations")}),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
+                    @ApiResponse(responseCode = "400", description = "Invalid include"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
-    public Response getStations() {
-        List<StationDTO> stationDTOList = stationService.getStations();
+    @Timed
+    @ExceptionMetered
+    public Response getStations(@Parameter(description = "If true, the list is streamed while it is read from the database (no X-Total-Count header)", schema = @Schema(type = "boolean")) @QueryParam("stream") boolean stream,
+                                @Parameter(description = "Maximum number of returned stations (enables pagination)", schema = @Schema(type = "integer", minimum = "1", maximum = "1000")) @QueryParam("limit") @Min(1) @Max(1000) Integer limit,
+                                @Parameter(description = "Cursor from the next Link header of the previous page (enables pagination)", schema = @Schema(type = "string")) @QueryParam("after") String after,
+                                @Parameter(description = "Nested collections to return, comma separated: parameters (measured parameters on the station), visibility (bases that can see the station). All of them if not given", schema = @Schema(type = "string", example = "parameters,visibility")) @QueryParam("include") String include,
+                                @Context UriInfo uriInfo,
+                                @Context Request request) {
+        StationDetails details = StationDetails.parse(include);
 
-        return Response
-                .ok(stationDTOList)
-                .header("X-Total-Count", stationDTOList.size())
-                .build();
+        String version = stationsVersion();
+        if (stream) {
+            return ConditionalResponses.evaluate(request, ConditionalResponses.jsonEntityTag(version), () -> Response
+                    .ok(new JsonArrayStreamingOutput<StationDTO>(objectMapper, consumer -> stationService.streamStations(details, consumer)))
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .build());
+        }
+
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, version), () -> {
+            if (limit != null || after != null) {
+                Page<StationDTO> page = stationService.getStations(after, limit != null ? limit : PagedResponses.DEFAULT_LIMIT, details);
+                return PagedResponses.ok(page, uriInfo);
+            }
+
+            List<StationDTO> stationDTOList = stationService.getStations(details);
+
+            return Response
+                    .ok(stationDTOList)
+                    .header("X-Total-Count", stationDTOList.size())
+                    .build();
+        });
+    }
+
+    @Operation(summary = "Get stations near location",
+            description = "Get all the stations within radius of the location, nearest first",
+            responses = {
+                    @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = StationDTO.class)),
+                            description = "List of the stations within radius", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned stations")}),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
+                    @ApiResponse(responseCode = "500", description = "Server error")
+            })
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
+    @GET
+    @Timed
+    @ExceptionMetered
+    @Path("near")
+    public Response getStationsNear(@Parameter(description = "Latitude of the location", schema = @Schema(type = "double"), required = true) @QueryParam("lat") @NotNull @DecimalMin("-90") @DecimalMax("90") Double latitude,
+                                    @Parameter(description = "Longitude of the location", schema = @Schema(type = "double"), required = true) @QueryParam("lon") @NotNull @DecimalMin("-180") @DecimalMax("180") Double longitude,
+                                    @Parameter(description = "Radius in kilometers", schema = @Schema(type = "double"), required = true) @QueryParam("radius") @NotNull @Positive @DecimalMax("1000") Double radius,
+                                    @Context Request request) {
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, stationsVersion()), () -> {
+            List<StationDTO> stationDTOList = stationService.getStationsNear(latitude, longitude, radius);
+
+            return Response
+                    .ok(stationDTOList)
+                    .header("X-Total-Count", stationDTOList.size())
+                    .build();
+        });
     }
 
     @Operation(summary = "Get station by ID",
@@ -70,14 +148,20 @@ public class StationResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = StationDTO.class)), description = "Station with appropriate ID"),
                     @ApiResponse(responseCode = "404", description = "Station not found"),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
+    @Timed
+    @ExceptionMetered
     @Path("{id}")
-    public Response getStation(@Parameter(description = "ID of the station to be returned", schema = @Schema(type = "integer", description = "ID of the station to be returned"), required = true) @PathParam("id") int id) {
-        StationDTO stationDTO = stationService.getStation(id);
-        return Response.ok(stationDTO).build();
+    public Response getStation(@Parameter(description = "ID of the station to be returned", schema = @Schema(type = "integer", description = "ID of the station to be returned"), required = true) @PathParam("id") int id,
+                               @Context Request request) {
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, stationsVersion()), () -> {
+            StationDTO stationDTO = stationService.getStation(id);
+            return Response.ok(stationDTO).build();
+        });
     }
 
 
@@ -91,6 +175,8 @@ public class StationResource {
             })
     @UnitOfWork
     @PUT
+    @Timed
+    @ExceptionMetered
     @Path("{id}")
     public Response updateStation(@Parameter(description = "ID of the station to be returned", schema = @Schema(type = "integer", description = "ID of the station to be returned"), required = true) @PathParam("id") int id,
                                   @RequestBody(description = "New station model object", required = true, content = @Content(schema = @Schema(implementation = StationDTO.class))) @Valid StationDTO stationDTO) {
@@ -109,9 +195,17 @@ public class StationResource {
             })
     @UnitOfWork
     @DELETE
+    @Timed
+    @ExceptionMetered
     @Path("{id}")
     public Response deleteParameter(@Parameter(description = "ID of the station to be deleted", schema = @Schema(type = "integer", description = "ID of the station to be deleted"), required = true)@PathParam("id") int id) {
         StationDTO deletedStation = stationService.deleteStation(id);
         return Response.ok(deletedStation).build();
     }
-}
\ No newline at end of file
+
+    // The stations are returned with their measured parameters (changes of the parameters on the stations and of the
+    // bases that can see them bump the version of the stations).
+    private String stationsVersion() {
+        return dataVersionService.getVersion(DataVersionService.STATIONS, DataVersionService.MEASURED_PARAMETERS);
+    }
+}
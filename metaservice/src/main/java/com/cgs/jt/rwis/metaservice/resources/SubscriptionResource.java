@@ -1,12 +1,24 @@
 package com.cgs.jt.rwis.metaservice.resources;
 
-import com.cgs.jt.rwis.api.EarthSurfacePoint;
 import com.cgs.jt.rwis.api.ParameterForecastSubscription;
+import com.cgs.jt.rwis.metaservice.api.SubscriptionChangesDTO;
+import com.cgs.jt.rwis.metaservice.core.BoundingBox;
+import com.cgs.jt.rwis.metaservice.core.CreateResult;
+import com.cgs.jt.rwis.metaservice.core.DataVersionService;
+import com.cgs.jt.rwis.metaservice.core.JsonArrayStreamingOutput;
+import com.cgs.jt.rwis.metaservice.core.Page;
 import com.cgs.jt.rwis.metaservice.core.SubscriptionService;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.ResponseMetered;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
@@ -14,37 +26,78 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
-import java.util.HashMap;
-import java.util.HashSet;
+import javax.ws.rs.core.UriInfo;
 import java.util.List;
 
-@Consumes(MediaType.APPLICATION_JSON)
-@Produces(MediaType.APPLICATION_JSON)
+@Consumes({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+@Produces({MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE})
 @Path("subscriptions")
 public class SubscriptionResource {
 
     @Inject
     private SubscriptionService subscriptionService;
 
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private MetricRegistry metrics;
+
+    @Inject
+    private DataVersionService dataVersionService;
+
     // CREATE
     @Operation(summary = "Create subscription",
-            description = "Create a new subscription",
+            description = "Create a new subscription, creating a subscription that already exists changes nothing",
             responses = {
                     @ApiResponse(responseCode = "201", description = "Subscription created", headers = {@Header(schema = @Schema(type = "string"), name = "Location", description = "URL to a created subscription")}),
+                    @ApiResponse(responseCode = "200", description = "Subscription already exists, the stored one is returned"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
     @POST
+    @Timed
+    @ExceptionMetered
     @UnitOfWork
     public Response createSubscription(@RequestBody(description = "New subscription object", required = true,
             content = @Content(schema = @Schema(implementation = ParameterForecastSubscription.class))) @Valid ParameterForecastSubscription subscription) {
-        ParameterForecastSubscription createdSubscription = subscriptionService.createSubscription(subscription);
+        CreateResult<ParameterForecastSubscription> createdSubscription = subscriptionService.createSubscription(subscription);
+
+        return Response
+                .ok(createdSubscription.getItem())
+                .status(createdSubscription.isCreated() ? Response.Status.CREATED : Response.Status.OK)
+                .build();
+    }
+
+    @Operation(summary = "Create subscriptions",
+            description = "Create multiple subscriptions in a single transaction, subscriptions that already exist are skipped",
+            responses = {
+                    @ApiResponse(responseCode = "201", description = "List of the subscriptions that were created", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of created subscriptions")}),
+                    @ApiResponse(responseCode = "500", description = "Server error")
+            })
+    @POST
+    @Timed
+    @ExceptionMetered
+    @Path("batch")
+    @UnitOfWork
+    public Response createSubscriptions(@RequestBody(description = "New subscription objects", required = true,
+            content = @Content(array = @ArraySchema(schema = @Schema(implementation = ParameterForecastSubscription.class)))) @NotEmpty @Valid List<ParameterForecastSubscription> subscriptions) {
+        List<ParameterForecastSubscription> createdSubscriptions = subscriptionService.createSubscriptions(subscriptions);
 
         return Response
-                .ok(createdSubscription)
+                .ok(createdSubscriptions)
                 .status(Response.Status.CREATED)
+                .header("X-Total-Count", createdSubscriptions.size())
                 .build();
     }
 
@@ -54,36 +107,122 @@ public class SubscriptionResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = ParameterForecastSubscription.class)),
                             description = "List of all the subscriptions", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned subscriptions")}),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             })
-    @UnitOfWork
+    @UnitOfWork(value = "hibernate-replica", readOnly = true)
     @GET
-    public Response getSubscriptions() {
-        List<ParameterForecastSubscription> subscriptionDTOList = subscriptionService.getSubscriptions();
+    @Timed
+    @ExceptionMetered
+    public Response getSubscriptions(@Parameter(description = "If true, the list is streamed while it is read from the database (no X-Total-Count header)", schema = @Schema(type = "boolean")) @QueryParam("stream") boolean stream,
+                                     @Parameter(description = "Maximum number of returned subscriptions (enables pagination)", schema = @Schema(type = "integer", minimum = "1", maximum = "1000")) @QueryParam("limit") @Min(1) @Max(1000) Integer limit,
+                                     @Parameter(description = "Cursor from the next Link header of the previous page (enables pagination)", schema = @Schema(type = "string")) @QueryParam("after") String after,
+                                     @Context UriInfo uriInfo,
+                                     @Context Request request) {
+        String version = dataVersionService.getVersion(DataVersionService.SUBSCRIPTIONS);
+        if (stream) {
+            return ConditionalResponses.evaluate(request, ConditionalResponses.jsonEntityTag(version), () -> Response
+                    .ok(new JsonArrayStreamingOutput<>(objectMapper, subscriptionService::streamSubscriptions))
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .build());
+        }
 
-        return Response
-                .ok(subscriptionDTOList)
-                .header("X-Total-Count", subscriptionDTOList.size())
-                .build();
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, version), () -> {
+            if (limit != null || after != null) {
+                Page<ParameterForecastSubscription> page = subscriptionService.getSubscriptions(after, limit != null ? limit : PagedResponses.DEFAULT_LIMIT);
+                return PagedResponses.ok(page, uriInfo);
+            }
+
+            List<ParameterForecastSubscription> subscriptionDTOList = subscriptionService.getSubscriptions();
+
+            return Response
+                    .ok(subscriptionDTOList)
+                    .header("X-Total-Count", subscriptionDTOList.size())
+                    .build();
+        });
     }
 
     @Operation(summary = "Get subscriptions for model",
             description = "Get all the subscriptions for model",
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = ParameterForecastSubscription.class)),
-                            description = "List of all the subscriptions for model", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned subscriptions for model")}),
-                    @ApiResponse(responseCode = "500", description = "Server error")
+                            description = "List of all the subscriptions for model", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned subscriptions for model"),
+                            @Header(schema = @Schema(type = "integer"), name = "X-Subscriptions-Version", description = "Version to use as since when requesting changes")}),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
+                    @ApiResponse(responseCode = "404", description = "Model not found"),
+                    @ApiResponse(responseCode = "500", description = "Server error"),
+                    @ApiResponse(responseCode = "503", description = "Server overloaded or no response within 30 s, retry later")
             })
-    @UnitOfWork
+    // Served from the in-memory snapshot; the database is only used to load or check the snapshot. The snapshot contains
+    // every change of the model up to its version, so its version is also the one to request the changes since.
     @GET
+    @ResponseMetered
+    @ExceptionMetered
     @Path("{model}")
-    public Response getSubscriptionsForModel(@Parameter(description = "Name of the model for subscriptions", schema = @Schema(type = "string", description = "Name of the model for subscriptions to be returned"), required = true) @PathParam("model") String model) {
-        HashMap<EarthSurfacePoint, HashMap<String, HashSet<String>>> subscriptionDTOList = subscriptionService.getSubscriptionsByModelName(model);
+    public void getSubscriptionsForModel(@Parameter(description = "Name of the model for subscriptions", schema = @Schema(type = "string", description = "Name of the model for subscriptions to be returned"), required = true) @PathParam("model") String model,
+                                         @Context Request request,
+                                         @Suspended AsyncResponse asyncResponse) {
+        AsyncTimers.time(metrics, SubscriptionResource.class, "getSubscriptionsForModel", asyncResponse);
+        AsyncResponses.resume(asyncResponse, subscriptionService.getSubscriptionsByModelName(model),
+                snapshot -> ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, snapshot.getVersion()), () -> Response
+                        .ok(snapshot.getValue())
+                        .header("X-Total-Count", snapshot.getValue().size())
+                        .header("X-Subscriptions-Version", snapshot.getVersion())
+                        .build()));
+    }
 
-        return Response
-                .ok(subscriptionDTOList)
-                .header("X-Total-Count", subscriptionDTOList.size())
-                .build();
+    @Operation(summary = "Get subscription changes for model",
+            description = "Get the subscriptions created and deleted for model since the version (from X-Subscriptions-Version or a previous response)",
+            responses = {
+                    @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = SubscriptionChangesDTO.class)), description = "Changes since the version and the new version"),
+                    @ApiResponse(responseCode = "410", description = "Changes since the version are no longer available, reload the subscriptions for model"),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
+                    @ApiResponse(responseCode = "500", description = "Server error")
+            })
+    // Read from the primary database: the versions clients ask about come from the snapshots, which are loaded from it,
+    // so a lagging replica would answer them with 410.
+    @UnitOfWork(readOnly = true)
+    @GET
+    @Timed
+    @ExceptionMetered
+    @Path("{model}/changes")
+    public Response getSubscriptionChangesForModel(@Parameter(description = "Name of the model for subscriptions", schema = @Schema(type = "string", description = "Name of the model for subscription changes to be returned"), required = true) @PathParam("model") String model,
+                                                   @Parameter(description = "Version after which the changes are returned", schema = @Schema(type = "integer"), required = true) @QueryParam("since") @NotNull Long since,
+                                                   @Context Request request) {
+        // The returned version counts the changes of all the models, the changes since a version only change with it.
+        long version = subscriptionService.getSubscriptionsVersion();
+        return ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, version), () -> {
+            SubscriptionChangesDTO subscriptionChangesDTO = subscriptionService.getSubscriptionChanges(model, since, version);
+            return Response.ok(subscriptionChangesDTO).build();
+        });
+    }
+
+    @Operation(summary = "Get subscriptions for model within bounding box",
+            description = "Get all the subscriptions for model with location inside the bounding box",
+            responses = {
+                    @ApiResponse(responseCode = "200", content = @Content(array = @ArraySchema(schema = @Schema(implementation = ParameterForecastSubscription.class))),
+                            description = "List of all the subscriptions for model within bounding box", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned subscriptions")}),
+                    @ApiResponse(responseCode = "400", description = "Invalid bounding box"),
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
+                    @ApiResponse(responseCode = "500", description = "Server error"),
+                    @ApiResponse(responseCode = "503", description = "Server overloaded or no response within 30 s, retry later")
+            })
+    @GET
+    @ResponseMetered
+    @ExceptionMetered
+    @Path("{model}/within")
+    public void getSubscriptionsForModelWithin(@Parameter(description = "Name of the model for subscriptions", schema = @Schema(type = "string", description = "Name of the model for subscriptions to be returned"), required = true) @PathParam("model") String model,
+                                               @Parameter(description = "Bounding box as minLon,minLat,maxLon,maxLat", schema = @Schema(type = "string", example = "13.3,45.4,16.6,46.9"), required = true) @QueryParam("bbox") String bbox,
+                                               @Context Request request,
+                                               @Suspended AsyncResponse asyncResponse) {
+        AsyncTimers.time(metrics, SubscriptionResource.class, "getSubscriptionsForModelWithin", asyncResponse);
+        BoundingBox boundingBox = BoundingBox.parse(bbox);
+
+        AsyncResponses.resume(asyncResponse, subscriptionService.getSubscriptionsByModelNameWithin(model, boundingBox),
+                subscriptionDTOList -> ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, subscriptionDTOList.getVersion()), () -> Response
+                        .ok(subscriptionDTOList.getValue())
+                        .header("X-Total-Count", subscriptionDTOList.getValue().size())
+                        .build()));
     }
 
     @Operation(summary = "Get subscriptions for model and location",
@@ -91,20 +230,25 @@ public class SubscriptionResource {
             responses = {
                     @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = ParameterForecastSubscription.class)),
                             description = "List of all the subscriptions for model and location", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of returned subscriptions for model and location")}),
-                    @ApiResponse(responseCode = "500", description = "Server error")
+                    @ApiResponse(responseCode = "304", description = "Not modified, the ETag in If-None-Match is current"),
+                    @ApiResponse(responseCode = "500", description = "Server error"),
+                    @ApiResponse(responseCode = "503", description = "Server overloaded or no response within 30 s, retry later")
             })
-    @UnitOfWork
     @GET
+    @ResponseMetered
+    @ExceptionMetered
     @Path("{model}/{latitude}/{longitude}")
-    public Response getSubscriptionsForModelAndLocation(@Parameter(description = "Name of the model for subscriptions", schema = @Schema(type = "string", description = "Name of the model for subscriptions to be returned"), required = true) @PathParam("model") String model,
-                                                        @Parameter(description = "Latitude location for subscription", schema = @Schema(type = "double", description = "Latitude location for subscription to be returned"), required = true) @PathParam("latitude") Double latitude,
-                                                        @Parameter(description = "Longitude location for subscription", schema = @Schema(type = "double", description = "Longitude location for subscription to be returned"), required = true) @PathParam("longitude") Double longitude) {
-        List<ParameterForecastSubscription> subscriptionDTOList = subscriptionService.getSubscriptionsByModelNameAndLocation(model, latitude, longitude);
-
-        return Response
-                .ok(subscriptionDTOList)
-                .header("X-Total-Count", subscriptionDTOList.size())
-                .build();
+    public void getSubscriptionsForModelAndLocation(@Parameter(description = "Name of the model for subscriptions", schema = @Schema(type = "string", description = "Name of the model for subscriptions to be returned"), required = true) @PathParam("model") String model,
+                                                    @Parameter(description = "Latitude location for subscription", schema = @Schema(type = "double", description = "Latitude location for subscription to be returned"), required = true) @PathParam("latitude") Double latitude,
+                                                    @Parameter(description = "Longitude location for subscription", schema = @Schema(type = "double", description = "Longitude location for subscription to be returned"), required = true) @PathParam("longitude") Double longitude,
+                                                    @Context Request request,
+                                                    @Suspended AsyncResponse asyncResponse) {
+        AsyncTimers.time(metrics, SubscriptionResource.class, "getSubscriptionsForModelAndLocation", asyncResponse);
+        AsyncResponses.resume(asyncResponse, subscriptionService.getSubscriptionsByModelNameAndLocation(model, latitude, longitude),
+                subscriptionDTOList -> ConditionalResponses.evaluate(request, ConditionalResponses.entityTag(request, subscriptionDTOList.getVersion()), () -> Response
+                        .ok(subscriptionDTOList.getValue())
+                        .header("X-Total-Count", subscriptionDTOList.getValue().size())
+                        .build()));
     }
 
 
@@ -117,6 +261,30 @@ public class SubscriptionResource {
         return Response.ok(updatedSubscription).build();
     }*/
 
+    @Operation(summary = "Replace subscriptions of customer",
+            description = "Make the given subscriptions the only subscriptions of the customer, in a single transaction: missing ones are created, the others are deleted",
+            responses = {
+                    @ApiResponse(responseCode = "200", content = @Content(array = @ArraySchema(schema = @Schema(implementation = ParameterForecastSubscription.class))),
+                            description = "List of the subscriptions of the customer", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of subscriptions of the customer")}),
+                    @ApiResponse(responseCode = "400", description = "Subscription of another customer"),
+                    @ApiResponse(responseCode = "500", description = "Server error")
+            })
+    @UnitOfWork
+    @PUT
+    @Timed
+    @ExceptionMetered
+    @Path("customer/{id}")
+    public Response replaceCustomerSubscriptions(@Parameter(description = "ID of the customer", schema = @Schema(type = "string"), required = true) @PathParam("id") String customerId,
+                                                 @RequestBody(description = "All the subscriptions of the customer (may be empty)", required = true,
+                                                         content = @Content(array = @ArraySchema(schema = @Schema(implementation = ParameterForecastSubscription.class)))) @NotNull @Valid List<ParameterForecastSubscription> subscriptions) {
+        List<ParameterForecastSubscription> customerSubscriptions = subscriptionService.replaceCustomerSubscriptions(customerId, subscriptions);
+
+        return Response
+                .ok(customerSubscriptions)
+                .header("X-Total-Count", customerSubscriptions.size())
+                .build();
+    }
+
 
     // DELETE
     @Operation(summary = "Delete subscription for model, location, parameter and customer",
@@ -127,6 +295,8 @@ public class SubscriptionResource {
             })
     @UnitOfWork
     @DELETE
+    @Timed
+    @ExceptionMetered
     @Path("{model}/{latitude}/{longitude}/{customer}/{parameter}")
     public Response deleteSubscription(@Parameter(description = "Name of the model for subscription to be delted", schema = @Schema(type = "string", description = "Name of the model for subscriptions to be deleted"), required = true) @PathParam("model") String model,
                                        @Parameter(description = "Latitude for subscription to be deleted", schema = @Schema(type = "double", description = "Latitude location for subscription to be deleted"), required = true) @PathParam("latitude") Double latitude,
@@ -136,4 +306,25 @@ public class SubscriptionResource {
         ParameterForecastSubscription deletedSubscription = subscriptionService.deleteSubscription(model, latitude, longitude, customer, parameter);
         return Response.ok(deletedSubscription).build();
     }
+
+    @Operation(summary = "Delete subscriptions of customer",
+            description = "Delete all the subscriptions of the customer",
+            responses = {
+                    @ApiResponse(responseCode = "200", content = @Content(array = @ArraySchema(schema = @Schema(implementation = ParameterForecastSubscription.class))),
+                            description = "List of the deleted subscriptions", headers = {@Header(schema = @Schema(type = "integer"), name = "X-Total-Count", description = "Number of deleted subscriptions")}),
+                    @ApiResponse(responseCode = "500", description = "Server error")
+            })
+    @UnitOfWork
+    @DELETE
+    @Timed
+    @ExceptionMetered
+    @Path("customer/{id}")
+    public Response deleteCustomerSubscriptions(@Parameter(description = "ID of the customer", schema = @Schema(type = "string"), required = true) @PathParam("id") String customerId) {
+        List<ParameterForecastSubscription> deletedSubscriptions = subscriptionService.deleteCustomerSubscriptions(customerId);
+
+        return Response
+                .ok(deletedSubscriptions)
+                .header("X-Total-Count", deletedSubscriptions.size())
+                .build();
+    }
 }
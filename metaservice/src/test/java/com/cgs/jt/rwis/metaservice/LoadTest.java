@@ -0,0 +1,95 @@
+package com.cgs.jt.rwis.metaservice;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Load test of a running service, for comparing virtualThreads: true and false (see "Virtual threads" in README.md).
+// Not run by the build, only when a URL is given, for example:
+//
+//   mvn test -Dtest=LoadTest -Dloadtest.url=http://localhost:8448/subscriptions/ALADIN -Dloadtest.clients=1000
+//
+// Every client sends requests one after another for loadtest.seconds (default 60) after a warm-up of
+// loadtest.warmupSeconds (default 10). The throughput, the latency percentiles (of a uniform sample) and the number of
+// failed requests (e.g. 503 when the executor queue is full) are printed. Run it on a separate machine, with the same
+// load for both modes.
+@EnabledIfSystemProperty(named = "loadtest.url", matches = ".+")
+class LoadTest {
+
+    @Test
+    void load() throws Exception {
+        URL url = new URL(System.getProperty("loadtest.url"));
+        int clients = Integer.getInteger("loadtest.clients", 1000);
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("loadtest.warmupSeconds", 10));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("loadtest.seconds", 60));
+        String accept = System.getProperty("loadtest.accept", "application/json");
+
+        long measureFrom = System.nanoTime() + warmupNanos;
+        long measureUntil = measureFrom + durationNanos;
+
+        Histogram latencies = new Histogram(new UniformReservoir(100_000));
+        LongAdder failed = new LongAdder();
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread client = new Thread(() -> {
+                try {
+                    long sent;
+                    while ((sent = System.nanoTime()) < measureUntil) {
+                        boolean ok = request(url, accept);
+                        long latency = System.nanoTime() - sent;
+                        if (sent < measureFrom)
+                            continue;
+                        latencies.update(latency);
+                        if (!ok)
+                            failed.increment();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-test-client-" + i);
+            client.setDaemon(true);
+            client.start();
+        }
+        done.await();
+
+        assertThat(latencies.getCount()).isPositive();
+        Snapshot snapshot = latencies.getSnapshot();
+        System.out.printf("%s, %d clients, %d s: %d requests, %.1f requests/s, %d failed%n", url, clients,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos), latencies.getCount(), latencies.getCount() / (durationNanos / 1e9), failed.sum());
+        System.out.printf("latency ms: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                snapshot.getMedian() / 1e6, snapshot.getValue(0.9) / 1e6, snapshot.get99thPercentile() / 1e6,
+                snapshot.get999thPercentile() / 1e6, snapshot.getMax() / 1e6);
+    }
+
+    // True for a 2xx response. The body is read fully, so the connection is kept alive and reused.
+    private static boolean request(URL url, String accept) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestProperty("Accept", accept);
+            int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (body != null) {
+                    byte[] buffer = new byte[8192];
+                    while (body.read(buffer) != -1) {
+                        // discarded
+                    }
+                }
+            }
+            return status / 100 == 2;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cgs.jt.rwis.metaservice;
+
+import com.cgs.jt.rwis.api.EarthSurfacePoint;
+import com.cgs.jt.rwis.api.GeographicLocation;
+import com.cgs.jt.rwis.srvcs.json.EarthSurfacePointMapKeyDeserializer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.dropwizard.jackson.Jackson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Payload size and (de)serialization time of a 100k-entry subscription map (GET /subscriptions/{model}) as JSON and as
+// Smile. Written with the ObjectMappers of the service, read with ObjectMappers configured like the ones of
+// MetaserviceSrvClient. Not run by the build, only with -Dbenchmark=true:
+//
+//   mvn test -Dtest=SmileBenchmark -Dbenchmark=true
+//
+// The times are averages of single-threaded runs after a warm-up, a rough comparison rather than a JMH measurement.
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SmileBenchmark {
+    private static final int ENTRIES = 100_000;
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int ITERATIONS = 20;
+    private static final TypeReference<Map<EarthSurfacePoint, Map<String, Set<String>>>> SUBSCRIPTIONS =
+            new TypeReference<Map<EarthSurfacePoint, Map<String, Set<String>>>>() {
+            };
+
+    @Test
+    void subscriptionsForModel() throws Exception {
+        Map<EarthSurfacePoint, Map<String, Set<String>>> subscriptions = subscriptions();
+
+        run("JSON", MetaServiceApplication.configureObjectMapper(Jackson.newObjectMapper()), clientMapper(new JsonFactory()), subscriptions);
+        run("Smile", MetaServiceApplication.configureObjectMapper(Jackson.newObjectMapper(new SmileFactory())), clientMapper(new SmileFactory()), subscriptions);
+    }
+
+    private static void run(String format, ObjectMapper writer, ObjectMapper reader, Map<EarthSurfacePoint, Map<String, Set<String>>> subscriptions) throws Exception {
+        byte[] written = writer.writeValueAsBytes(subscriptions);
+        assertThat(reader.readValue(written, SUBSCRIPTIONS)).isEqualTo(subscriptions);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            reader.readValue(writer.writeValueAsBytes(subscriptions), SUBSCRIPTIONS);
+        }
+
+        long writeNanos = 0;
+        long readNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            written = writer.writeValueAsBytes(subscriptions);
+            long writtenAt = System.nanoTime();
+            reader.readValue(written, SUBSCRIPTIONS);
+            readNanos += System.nanoTime() - writtenAt;
+            writeNanos += writtenAt - start;
+        }
+
+        System.out.printf("%-5s %,d entries: %,d bytes, write %.1f ms, read %.1f ms%n", format, subscriptions.size(),
+                written.length, writeNanos / 1e6 / ITERATIONS, readNanos / 1e6 / ITERATIONS);
+    }
+
+    // Configured like the ObjectMappers of MetaserviceSrvClient.
+    private static ObjectMapper clientMapper(JsonFactory factory) {
+        return new ObjectMapper(factory)
+                .registerModule(new JavaTimeModule())
+                .registerModule(new SimpleModule().addKeyDeserializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeyDeserializer()));
+    }
+
+    // Locations in Slovenia with one or two forecasted parameters, each with one to three customers.
+    private static Map<EarthSurfacePoint, Map<String, Set<String>>> subscriptions() {
+        Random random = new Random(42);
+        Map<EarthSurfacePoint, Map<String, Set<String>>> subscriptions = new HashMap<>();
+        while (subscriptions.size() < ENTRIES) {
+            double latitude = Math.round((45.4 + random.nextDouble() * 1.5) * 1e5) / 1e5;
+            double longitude = Math.round((13.4 + random.nextDouble() * 3.2) * 1e5) / 1e5;
+            Double elevation = random.nextInt(10) == 0 ? null : (double) (100 + random.nextInt(2000));
+
+            Map<String, Set<String>> parameters = new HashMap<>();
+            for (String parameter : random.nextBoolean() ? Arrays.asList("AIRTEMPERATURE150CM") : Arrays.asList("AIRTEMPERATURE150CM", "GROUNDTEMPERATURE")) {
+                Set<String> customers = new HashSet<>();
+                for (int c = random.nextInt(3); c >= 0; c--) {
+                    customers.add("customer" + random.nextInt(50));
+                }
+                parameters.put(parameter, customers);
+            }
+            subscriptions.put(new EarthSurfacePoint(new GeographicLocation(latitude, longitude), elevation), parameters);
+        }
+        return subscriptions;
+    }
+}
@@ -0,0 +1,67 @@
+package com.cgs.jt.rwis.metaservice;
+
+import com.cgs.jt.rwis.api.EarthSurfacePoint;
+import com.cgs.jt.rwis.api.GeographicLocation;
+import com.cgs.jt.rwis.api.ParameterForecastSubscription;
+import com.cgs.jt.rwis.api.params.ForecastedParameter;
+import com.cgs.jt.rwis.metaservice.api.SubscriptionChangeDTO;
+import com.cgs.jt.rwis.metaservice.api.SubscriptionChangesDTO;
+import com.cgs.jt.rwis.srvcs.json.EarthSurfacePointMapKeyDeserializer;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.dropwizard.jackson.Jackson;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// What the service writes as Smile is read back by the Smile ObjectMapper of the HTTP clients (MetaserviceSrvClient) as
+// the same data as the JSON.
+class SmileRoundTripTest {
+    private final ObjectMapper json = MetaServiceApplication.configureObjectMapper(Jackson.newObjectMapper());
+    private final ObjectMapper smile = MetaServiceApplication.configureObjectMapper(Jackson.newObjectMapper(new SmileFactory()));
+
+    // Configured like the Smile ObjectMapper of MetaserviceSrvClient.
+    private final ObjectMapper clientSmile = new ObjectMapper(new SmileFactory())
+            .registerModule(new JavaTimeModule())
+            .registerModule(new SimpleModule().addKeyDeserializer(EarthSurfacePoint.class, new EarthSurfacePointMapKeyDeserializer()));
+
+    @Test
+    void subscriptionsForModel() throws Exception {
+        Map<EarthSurfacePoint, Map<String, Set<String>>> subscriptions = new HashMap<>();
+        subscriptions.put(new EarthSurfacePoint(new GeographicLocation(46.05, 14.5), 295.0),
+                Collections.singletonMap("AIRTEMPERATURE150CM", new HashSet<>(Arrays.asList("customer1", "customer2"))));
+        subscriptions.put(new EarthSurfacePoint(new GeographicLocation(45.548, 13.73), null),
+                Collections.singletonMap("GROUNDTEMPERATURE", Collections.singleton("customer1")));
+
+        byte[] written = smile.writeValueAsBytes(subscriptions);
+        Map<EarthSurfacePoint, Map<String, Set<String>>> read = clientSmile.readValue(written,
+                new TypeReference<Map<EarthSurfacePoint, Map<String, Set<String>>>>() {
+                });
+
+        assertThat(read).isEqualTo(subscriptions);
+        assertThat(written.length).isLessThan(json.writeValueAsBytes(subscriptions).length);
+    }
+
+    @Test
+    void subscriptionChanges() throws Exception {
+        ParameterForecastSubscription subscription = new ParameterForecastSubscription(ForecastedParameter.AIRTEMPERATURE150CM,
+                new EarthSurfacePoint(new GeographicLocation(46.05, 14.5), 295.0), "ALADIN", "customer1");
+        SubscriptionChangesDTO changes = new SubscriptionChangesDTO(42L, Arrays.asList(
+                new SubscriptionChangeDTO(41L, SubscriptionChangeDTO.Type.DELETED, subscription),
+                new SubscriptionChangeDTO(42L, SubscriptionChangeDTO.Type.CREATED, subscription)));
+
+        SubscriptionChangesDTO read = clientSmile.readValue(smile.writeValueAsBytes(changes), SubscriptionChangesDTO.class);
+
+        assertThat(json.writeValueAsString(read)).isEqualTo(json.writeValueAsString(changes));
+    }
+}
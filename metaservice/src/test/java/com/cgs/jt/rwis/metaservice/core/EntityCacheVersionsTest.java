@@ -0,0 +1,110 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.metaservice.db.entity.*;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.H2Dialect;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A model deleted through another instance (here: plain JDBC, which Hibernate does not see) stays in the second-level
+// and query cache until a newer version of the models is read.
+class EntityCacheVersionsTest {
+    private static final Class<?>[] ENTITIES = {Model.class, MeasuredParameter.class, ForecastedParameter.class,
+            ParameterOnStation.class, Station.class, BaseCanSeeStation.class, Subscription.class, Location.class, MetroConfig.class};
+
+    private SessionFactory sessionFactory;
+    private final EntityCacheVersions entityCacheVersions =
+            new EntityCacheVersions(Collections.singletonMap(DataVersionService.MODELS, Model.class));
+
+    @BeforeEach
+    void createSessionFactory() {
+        // The PostgreSQL jsonb type of metro_config.config is a plain string in H2.
+        Configuration configuration = new Configuration()
+                .setProperty(AvailableSettings.DRIVER, "org.h2.Driver")
+                .setProperty(AvailableSettings.URL, "jdbc:h2:mem:entity-cache-versions;DB_CLOSE_DELAY=-1;INIT=CREATE DOMAIN IF NOT EXISTS JSONB AS VARCHAR")
+                .setProperty(AvailableSettings.DIALECT, H2Dialect.class.getName())
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true")
+                .setProperty(AvailableSettings.USE_QUERY_CACHE, "true")
+                .setProperty(AvailableSettings.CACHE_REGION_FACTORY, "jcache")
+                .setProperty("hibernate.javax.cache.provider", "com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "create");
+        for (Class<?> entity : ENTITIES) {
+            configuration.addAnnotatedClass(entity);
+        }
+        sessionFactory = configuration.buildSessionFactory();
+
+        execute("INSERT INTO model (name) VALUES ('ALADIN')");
+    }
+
+    @AfterEach
+    void closeSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void changedTableIsEvicted() {
+        entityCacheVersions.check(sessionFactory, Collections.singletonMap(DataVersionService.MODELS, 1L));
+        assertThat(models()).containsExactly("ALADIN");
+        assertThat(find("ALADIN")).isTrue();
+
+        execute("DELETE FROM model WHERE name = 'ALADIN'");
+        entityCacheVersions.check(sessionFactory, Collections.singletonMap(DataVersionService.MODELS, 1L));
+        assertThat(models()).containsExactly("ALADIN");
+        assertThat(find("ALADIN")).isTrue();
+
+        entityCacheVersions.check(sessionFactory, Collections.singletonMap(DataVersionService.MODELS, 2L));
+        assertThat(models()).isEmpty();
+        assertThat(find("ALADIN")).isFalse();
+    }
+
+    @Test
+    void otherTablesAreNotEvicted() {
+        entityCacheVersions.check(sessionFactory, Collections.singletonMap(DataVersionService.MODELS, 1L));
+        assertThat(find("ALADIN")).isTrue();
+
+        execute("DELETE FROM model WHERE name = 'ALADIN'");
+        entityCacheVersions.check(sessionFactory, Collections.singletonMap(DataVersionService.SUBSCRIPTIONS, 2L));
+
+        assertThat(find("ALADIN")).isTrue();
+    }
+
+    private List<String> models() {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.Model.getAll", Model.class)
+                    .getResultList().stream()
+                    .map(Model::getName)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private boolean find(String name) {
+        try (Session session = sessionFactory.openSession()) {
+            return session.get(Model.class, name) != null;
+        }
+    }
+
+    // Bypasses Hibernate, so its caches are not invalidated.
+    private void execute(String sql) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate(sql);
+                }
+            });
+            session.getTransaction().commit();
+        }
+    }
+}
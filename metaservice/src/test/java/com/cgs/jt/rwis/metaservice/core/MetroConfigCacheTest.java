@@ -0,0 +1,70 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.metro.MetroLocationDescription;
+import io.dropwizard.util.Duration;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetroConfigCacheTest {
+    private static final ModelLocationKey KEY = new ModelLocationKey("ALADIN", 46.05, 14.5);
+
+    private long now = 0;
+    private final MetroConfigCache cache = new MetroConfigCache(100, Duration.seconds(1), () -> now);
+
+    @Test
+    void configIsCheckedAfterTheInterval() {
+        cache.checked("ALADIN", 1L);
+        Versioned<MetroLocationDescription> loaded = cache.get(KEY, 1L, key -> new Versioned<>(null, 1L));
+        now += TimeUnit.MILLISECONDS.toNanos(999);
+        assertThat(cache.getChecked(KEY)).containsSame(loaded);
+
+        now += TimeUnit.MILLISECONDS.toNanos(1);
+        assertThat(cache.getChecked(KEY)).isEmpty();
+
+        // Same version in the database: the cached config is served again without loading it.
+        cache.checked("ALADIN", 1L);
+        assertThat(cache.get(KEY, 1L, key -> new Versioned<>(null, 1L))).isSameAs(loaded);
+        assertThat(cache.getChecked(KEY)).containsSame(loaded);
+    }
+
+    // The configs of the model were changed through another instance or directly in the database.
+    @Test
+    void configOfAnOlderVersionIsLoadedAgain() {
+        cache.checked("ALADIN", 1L);
+        Versioned<MetroLocationDescription> loaded = cache.get(KEY, 1L, key -> new Versioned<>(null, 1L));
+        now += TimeUnit.SECONDS.toNanos(1);
+
+        cache.checked("ALADIN", 2L);
+        assertThat(cache.getChecked(KEY)).isEmpty();
+        Versioned<MetroLocationDescription> reloaded = cache.get(KEY, 2L, key -> new Versioned<>(null, 2L));
+
+        assertThat(reloaded).isNotSameAs(loaded);
+        assertThat(cache.getChecked(KEY)).containsSame(reloaded);
+    }
+
+    @Test
+    void olderCheckDoesNotReplaceNewerOne() {
+        cache.checked("ALADIN", 2L);
+        cache.get(KEY, 2L, key -> new Versioned<>(null, 2L));
+
+        cache.checked("ALADIN", 1L);
+
+        assertThat(cache.getChecked(KEY)).isPresent();
+    }
+
+    @Test
+    void localChangeChecksTheModel() {
+        ModelLocationKey otherLocation = new ModelLocationKey("ALADIN", 46.5, 15.0);
+        cache.checked("ALADIN", 1L);
+        cache.get(KEY, 1L, key -> new Versioned<>(null, 1L));
+        cache.get(otherLocation, 1L, key -> new Versioned<>(null, 1L));
+
+        cache.invalidate(KEY);
+
+        assertThat(cache.getChecked(KEY)).isEmpty();
+        assertThat(cache.getChecked(otherLocation)).isEmpty();
+    }
+}
@@ -0,0 +1,150 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.api.EarthSurfacePoint;
+import com.cgs.jt.rwis.api.GeographicLocation;
+import com.cgs.jt.rwis.api.params.ForecastedParameter;
+import com.cgs.jt.rwis.metaservice.db.entity.Subscription;
+import io.dropwizard.util.Duration;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.cgs.jt.rwis.metaservice.core.Subscriptions.change;
+import static com.cgs.jt.rwis.metaservice.core.Subscriptions.subscription;
+import static com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange.CREATED;
+import static com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange.DELETED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubscriptionSnapshotCacheTest {
+    private static final String AIR_TEMPERATURE = ForecastedParameter.AIRTEMPERATURE150CM.getLabel();
+    private static final String GROUND_TEMPERATURE = ForecastedParameter.GROUNDTEMPERATURE.getLabel();
+    private static final EarthSurfacePoint POINT = new EarthSurfacePoint(new GeographicLocation(46.05, 14.5), null);
+
+    private long now = 0;
+    private final SubscriptionSnapshotCache cache = new SubscriptionSnapshotCache(Duration.seconds(1), () -> now);
+
+    @Test
+    void createsAndDeletes() {
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> installed = cache.install("ALADIN", cache.generation("ALADIN"), 1L,
+                Collections.singletonList(subscription("ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 295.0)));
+
+        cache.apply("ALADIN", cache.generation("ALADIN"), installed, Arrays.asList(
+                change(2L, DELETED, "ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 295.0),
+                change(2L, CREATED, "ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer2", 295.0),
+                change(2L, CREATED, "ALADIN", 46.05, 14.5, GROUND_TEMPERATURE, "customer2", 295.0)), 2L);
+
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> snapshot = cache.get("ALADIN").get();
+        assertThat(snapshot.getVersion()).isEqualTo(2L);
+        Map<String, Set<String>> parameters = snapshot.getValue().get(POINT);
+        assertThat(parameters.get(AIR_TEMPERATURE)).containsExactly("customer2");
+        assertThat(parameters.get(GROUND_TEMPERATURE)).containsExactly("customer2");
+        // The installed snapshot is not modified.
+        assertThat(installed.getValue().get(POINT).get(AIR_TEMPERATURE)).containsExactly("customer1");
+    }
+
+    // PUT /subscriptions/customer/{customerId} changes the elevation of a subscription by deleting it and creating it
+    // again with the same key, in the same commit.
+    @Test
+    void elevationChange() {
+        Subscription before = subscription("ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 295.0);
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> installed = cache.install("ALADIN", cache.generation("ALADIN"), 1L, Collections.singletonList(before));
+
+        cache.apply("ALADIN", cache.generation("ALADIN"), installed, Arrays.asList(
+                change(2L, DELETED, "ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 295.0),
+                change(2L, CREATED, "ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 300.0)), 2L);
+
+        Map<EarthSurfacePoint, Map<String, Set<String>>> snapshot = cache.get("ALADIN").get().getValue();
+        assertThat(snapshot).hasSize(1);
+        assertThat(snapshot.get(POINT).get(AIR_TEMPERATURE)).containsExactly("customer1");
+        // EarthSurfacePoint.equals() ignores the elevation, the key itself must be the new one.
+        assertThat(snapshot.keySet().iterator().next().getElevation()).isEqualTo(300.0);
+    }
+
+    // Changes of several commits are applied in the order they were made.
+    @Test
+    void changesAreAppliedInOrder() {
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> installed = cache.install("ALADIN", cache.generation("ALADIN"), 1L, Collections.emptyList());
+
+        cache.apply("ALADIN", cache.generation("ALADIN"), installed, Arrays.asList(
+                change(2L, CREATED, "ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 295.0),
+                change(3L, DELETED, "ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 295.0)), 3L);
+
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> snapshot = cache.get("ALADIN").get();
+        assertThat(snapshot.getVersion()).isEqualTo(3L);
+        assertThat(snapshot.getValue()).isEmpty();
+    }
+
+    @Test
+    void snapshotIsCheckedAfterTheInterval() {
+        cache.install("ALADIN", cache.generation("ALADIN"), 1L, Collections.emptyList());
+        now += TimeUnit.MILLISECONDS.toNanos(999);
+        assertThat(cache.getChecked("ALADIN")).isPresent();
+
+        now += TimeUnit.MILLISECONDS.toNanos(1);
+        assertThat(cache.getChecked("ALADIN")).isEmpty();
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> snapshot = cache.get("ALADIN").get();
+
+        cache.checked("ALADIN", cache.generation("ALADIN"), snapshot);
+
+        assertThat(cache.getChecked("ALADIN")).containsSame(snapshot);
+    }
+
+    @Test
+    void localChangeChecksTheSnapshot() {
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> installed = cache.install("ALADIN", cache.generation("ALADIN"), 1L, Collections.emptyList());
+
+        cache.markChanged(Collections.singletonList("ALADIN"));
+
+        assertThat(cache.getChecked("ALADIN")).isEmpty();
+        assertThat(cache.get("ALADIN")).containsSame(installed);
+    }
+
+    @Test
+    void snapshotLoadedDuringChangeIsNotInstalled() {
+        long generation = cache.generation("ALADIN");
+        cache.markChanged(Collections.singletonList("ALADIN"));
+
+        cache.install("ALADIN", generation, 1L, Collections.emptyList());
+
+        assertThat(cache.get("ALADIN")).isEmpty();
+    }
+
+    @Test
+    void snapshotCheckedOrUpdatedDuringChangeIsNotStored() {
+        Versioned<Map<EarthSurfacePoint, Map<String, Set<String>>>> installed = cache.install("ALADIN", cache.generation("ALADIN"), 1L, Collections.emptyList());
+        long generation = cache.generation("ALADIN");
+        cache.markChanged(Collections.singletonList("ALADIN"));
+
+        cache.checked("ALADIN", generation, installed);
+        assertThat(cache.getChecked("ALADIN")).isEmpty();
+
+        cache.apply("ALADIN", generation, installed,
+                Collections.singletonList(change(2L, CREATED, "ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 295.0)), 2L);
+        assertThat(cache.get("ALADIN")).containsSame(installed);
+    }
+
+    @Test
+    void olderSnapshotDoesNotReplaceNewerOne() {
+        long generation = cache.generation("ALADIN");
+        cache.install("ALADIN", generation, 2L, Collections.emptyList());
+
+        cache.install("ALADIN", generation, 1L, Collections.singletonList(subscription("ALADIN", 46.05, 14.5, AIR_TEMPERATURE, "customer1", 295.0)));
+
+        assertThat(cache.get("ALADIN").get().getVersion()).isEqualTo(2L);
+    }
+
+    @Test
+    void removedModelIsNotInstalled() {
+        long generation = cache.generation("ALADIN");
+        cache.install("ALADIN", generation, 1L, Collections.emptyList());
+
+        cache.remove("ALADIN");
+        cache.install("ALADIN", generation, 1L, Collections.emptyList());
+
+        assertThat(cache.get("ALADIN")).isEmpty();
+    }
+}
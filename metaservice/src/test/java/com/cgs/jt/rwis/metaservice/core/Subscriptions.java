@@ -0,0 +1,44 @@
+package com.cgs.jt.rwis.metaservice.core;
+
+import com.cgs.jt.rwis.metaservice.db.entity.ForecastedParameter;
+import com.cgs.jt.rwis.metaservice.db.entity.Location;
+import com.cgs.jt.rwis.metaservice.db.entity.Model;
+import com.cgs.jt.rwis.metaservice.db.entity.Subscription;
+import com.cgs.jt.rwis.metaservice.db.entity.SubscriptionChange;
+
+// Subscription entities for the tests.
+final class Subscriptions {
+    private Subscriptions() {
+    }
+
+    static Subscription subscription(String modelName, double latitude, double longitude, String forecastedParameterName, String customerId, double elevation) {
+        Model model = new Model();
+        model.setName(modelName);
+        Location location = new Location();
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        ForecastedParameter forecastedParameter = new ForecastedParameter();
+        forecastedParameter.setName(forecastedParameterName);
+
+        Subscription subscription = new Subscription();
+        subscription.setModel(model);
+        subscription.setLocation(location);
+        subscription.setForecastedParameter(forecastedParameter);
+        subscription.setCustomerId(customerId);
+        subscription.setElevation(elevation);
+        return subscription;
+    }
+
+    static SubscriptionChange change(long version, String type, String modelName, double latitude, double longitude, String forecastedParameterName, String customerId, double elevation) {
+        SubscriptionChange change = new SubscriptionChange();
+        change.setVersion(version);
+        change.setType(type);
+        change.setModelName(modelName);
+        change.setLatitude(latitude);
+        change.setLongitude(longitude);
+        change.setForecastedParameterName(forecastedParameterName);
+        change.setCustomerId(customerId);
+        change.setElevation(elevation);
+        return change;
+    }
+}
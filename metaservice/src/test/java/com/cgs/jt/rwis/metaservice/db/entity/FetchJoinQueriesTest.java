@@ -0,0 +1,139 @@
+package com.cgs.jt.rwis.metaservice.db.entity;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.query.Query;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The named queries of Subscription and MetroConfig fetch their associations in the same statement: loading rows that
+// reference several models, forecasted parameters and locations must not issue a select per association.
+class FetchJoinQueriesTest {
+    private static final Class<?>[] ENTITIES = {Model.class, MeasuredParameter.class, ForecastedParameter.class,
+            ParameterOnStation.class, Station.class, BaseCanSeeStation.class, Subscription.class, Location.class, MetroConfig.class};
+
+    private static SessionFactory sessionFactory;
+
+    @BeforeAll
+    static void createSessionFactory() {
+        // The PostgreSQL jsonb type of metro_config.config is a plain string in H2.
+        Configuration configuration = new Configuration()
+                .setProperty(AvailableSettings.DRIVER, "org.h2.Driver")
+                .setProperty(AvailableSettings.URL, "jdbc:h2:mem:fetch-joins;DB_CLOSE_DELAY=-1;INIT=CREATE DOMAIN IF NOT EXISTS JSONB AS VARCHAR")
+                .setProperty(AvailableSettings.DIALECT, H2Dialect.class.getName())
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, "false")
+                .setProperty(AvailableSettings.GENERATE_STATISTICS, "true");
+        for (Class<?> entity : ENTITIES) {
+            configuration.addAnnotatedClass(entity);
+        }
+        sessionFactory = configuration.buildSessionFactory();
+
+        inSession(session -> {
+            session.beginTransaction();
+            for (String model : new String[]{"ALADIN", "INCA"}) {
+                session.createNativeQuery("INSERT INTO model (name) VALUES ('" + model + "')").executeUpdate();
+            }
+            for (String parameter : new String[]{"AIRTEMPERATURE150CM", "GROUNDTEMPERATURE"}) {
+                session.createNativeQuery("INSERT INTO forecasted_parameter (name) VALUES ('" + parameter + "')").executeUpdate();
+            }
+            for (String location : new String[]{"46.05, 14.5", "45.548, 13.73", "46.5, 15.6"}) {
+                session.createNativeQuery("INSERT INTO location (latitude, longitude) VALUES (" + location + ")").executeUpdate();
+                for (String model : new String[]{"ALADIN", "INCA"}) {
+                    session.createNativeQuery("INSERT INTO metro_config (model_name, latitude, longitude, config) VALUES ('" + model + "', " + location + ", '{}')").executeUpdate();
+                    for (String parameter : new String[]{"AIRTEMPERATURE150CM", "GROUNDTEMPERATURE"}) {
+                        session.createNativeQuery("INSERT INTO subscription (model_name, latitude, longitude, forecasted_parameter_name, customer_id, elevation) " +
+                                "VALUES ('" + model + "', " + location + ", '" + parameter + "', 'customer', 295.0)").executeUpdate();
+                    }
+                }
+            }
+            session.getTransaction().commit();
+            return null;
+        });
+    }
+
+    @AfterAll
+    static void closeSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void clearStatistics() {
+        sessionFactory.getStatistics().clear();
+    }
+
+    @Test
+    void subscriptions() {
+        assertSingleStatement(session -> session.createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAll", Subscription.class), 12);
+    }
+
+    @Test
+    void subscriptionsByModelName() {
+        assertSingleStatement(session -> session.createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelName", Subscription.class)
+                .setParameter("model_name", "ALADIN"), 6);
+    }
+
+    @Test
+    void subscriptionsByModelNameAndLocation() {
+        assertSingleStatement(session -> session.createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getAllByModelNameAndLocation", Subscription.class)
+                .setParameter("model_name", "ALADIN")
+                .setParameter("latitude", 46.05)
+                .setParameter("longitude", 14.5), 2);
+    }
+
+    @Test
+    void subscriptionPage() {
+        assertSingleStatement(session -> session.createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.Subscription.getPage", Subscription.class)
+                .setMaxResults(5), 5);
+    }
+
+    @Test
+    void metroConfigs() {
+        assertSingleStatement(session -> session.createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getAll", MetroConfig.class), 6);
+    }
+
+    @Test
+    void metroConfigPage() {
+        assertSingleStatement(session -> session.createNamedQuery("com.cgs.jt.rwis.metaservice.db.entity.MetroConfig.getPage", MetroConfig.class)
+                .setMaxResults(4), 4);
+    }
+
+    // Also reads the associations (as the mappers do) before the session is closed.
+    private static void assertSingleStatement(Function<Session, Query<?>> query, int rows) {
+        List<?> result = inSession(session -> {
+            List<?> list = query.apply(session).list();
+            for (Object row : list) {
+                if (row instanceof Subscription) {
+                    Subscription subscription = (Subscription) row;
+                    subscription.getModel().getName();
+                    subscription.getForecastedParameter().getName();
+                    subscription.getLocation().getLatitude();
+                } else {
+                    MetroConfig metroConfig = (MetroConfig) row;
+                    metroConfig.getModel().getName();
+                    metroConfig.getLocation().getLatitude();
+                }
+            }
+            return list;
+        });
+
+        assertThat(result).hasSize(rows);
+        assertThat(sessionFactory.getStatistics().getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    private static <T> T inSession(Function<Session, T> work) {
+        try (Session session = sessionFactory.openSession()) {
+            return work.apply(session);
+        }
+    }
+}